@@ -0,0 +1,42 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.MetricsConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.config.TargetConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * Wires a {@link ProxyService} by hand (no Spring context) against a stand-in proxy.
+ */
+final class BenchmarkFixtures {
+
+    static final String TARGET_URL = "http://backend.invalid/resource";
+
+    private BenchmarkFixtures() {
+    }
+
+    static ProxyService proxyService(int proxyPort) {
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setHost("127.0.0.1");
+        proxyConfig.setPort(proxyPort);
+        proxyConfig.setUsername("bench");
+        proxyConfig.setPassword("bench");
+        proxyConfig.setDomain("BENCH");
+        HttpClientConfig httpClientConfig = new HttpClientConfig();
+        TargetConfig targetConfig = new TargetConfig();
+        targetConfig.setUrl(TARGET_URL);
+        ProxyAuthSessionCache sessionCache = new ProxyAuthSessionCache(proxyConfig);
+        ProxyResponseCache responseCache = new ProxyResponseCache(httpClientConfig);
+        ProxyTlsContext tlsContext = new ProxyTlsContext(httpClientConfig);
+        KerberosCredentialCache kerberosCredentials = new KerberosCredentialCache(proxyConfig);
+        CachingDnsResolver dnsResolver = new CachingDnsResolver(httpClientConfig);
+        ProxyMetrics metrics = new ProxyMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT),
+                new MetricsConfig(), sessionCache, tlsContext, kerberosCredentials, responseCache, dnsResolver);
+        return new ProxyService(proxyConfig, httpClientConfig, targetConfig,
+                new ProxyAuthSchemeResolver(proxyConfig), sessionCache, responseCache, tlsContext,
+                kerberosCredentials, metrics, new RequestTimingRecorder(httpClientConfig), dnsResolver,
+                new ProxyEndpointPool(proxyConfig, dnsResolver), new ProxyAuthRacer(proxyConfig));
+    }
+}
@@ -0,0 +1,69 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a response body into a String versus streaming it through {@link EntityStreams},
+ * on in-memory entities so the network does not dominate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class BodyConsumptionBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    private int bodySize;
+
+    private byte[] body;
+    private WritableByteChannel nullChannel;
+
+    @Setup
+    public void setUp() {
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        nullChannel = Channels.newChannel(NullOutputStream.INSTANCE);
+    }
+
+    private HttpEntity entity() {
+        return new InputStreamEntity(new ByteArrayInputStream(body), body.length, ContentType.TEXT_PLAIN);
+    }
+
+    @Benchmark
+    public String entityUtilsToString() throws IOException {
+        return EntityUtils.toString(entity());
+    }
+
+    @Benchmark
+    public long streamToOutputStream() throws IOException {
+        return EntityStreams.copy(entity(), NullOutputStream.INSTANCE);
+    }
+
+    @Benchmark
+    public long streamToChannel() throws IOException {
+        return EntityStreams.copy(entity(), nullChannel);
+    }
+}
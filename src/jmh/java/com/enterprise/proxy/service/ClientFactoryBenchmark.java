@@ -0,0 +1,47 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building (and closing) one pooled client per auth mode in the createHttpClient* factories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class ClientFactoryBenchmark {
+
+    @Param({"KERBEROS", "NEGOTIATE", "NTLM", "BASIC"})
+    private ProxyAuthMode mode;
+
+    private ProxyService service;
+
+    @Setup
+    public void setUp() {
+        // No requests are sent, so the proxy port does not need to be open
+        service = BenchmarkFixtures.proxyService(3128);
+    }
+
+    @Benchmark
+    public CloseableHttpClient createClient() throws IOException {
+        CloseableHttpClient client = service.createClient(mode);
+        client.close();
+        return client;
+    }
+}
@@ -0,0 +1,78 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.standin.StandInProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link ProxyService#executeRequest(String)} path against the stand-in proxy, after the
+ * scheme resolver has settled: "none" is served by the Kerberos client without a challenge, the
+ * others by the first scheme that answers the proxy's challenge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class ExecuteRequestBenchmark {
+
+    // Schemes the stand-in challenges with, in order
+    @Param({"none", "basic", "ntlm", "negotiate,ntlm,basic"})
+    private String proxyAuth;
+
+    @Param({"1024"})
+    private int bodySize;
+
+    private StandInProxy proxy;
+    private ProxyService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<StandInProxy.Scheme> schemes = new ArrayList<>();
+        for (String scheme : proxyAuth.split(",")) {
+            if (!scheme.equals("none")) {
+                schemes.add(StandInProxy.Scheme.valueOf(scheme.toUpperCase(Locale.ROOT)));
+            }
+        }
+        proxy = new StandInProxy(0, schemes, bodySize);
+        service = BenchmarkFixtures.proxyService(proxy.getPort());
+        service.initClients();
+        String result = service.executeRequest(BenchmarkFixtures.TARGET_URL);
+        if (result.length() != bodySize) {
+            throw new IllegalStateException("Stand-in request failed: " + result);
+        }
+    }
+
+    @Benchmark
+    public String executeRequest() {
+        return service.executeRequest(BenchmarkFixtures.TARGET_URL);
+    }
+
+    @Benchmark
+    public long executeRequestToStream() throws IOException {
+        return service.executeRequestToStream(BenchmarkFixtures.TARGET_URL, NullOutputStream.INSTANCE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        service.closeClients();
+        proxy.close();
+    }
+}
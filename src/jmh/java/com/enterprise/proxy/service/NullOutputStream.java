@@ -0,0 +1,22 @@
+package com.enterprise.proxy.service;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything, so benchmarks measure reading the body rather than writing it.
+ */
+final class NullOutputStream extends OutputStream {
+
+    static final NullOutputStream INSTANCE = new NullOutputStream();
+
+    private NullOutputStream() {
+    }
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.standin.StandInTlsOrigin;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a TLS connection to a loopback origin: a trust-all context and socket factory per client
+ * (the old factories, so every connection is a full handshake) versus the shared {@link ProxyTlsContext},
+ * built once, whose session cache lets later connections resume.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class TlsSetupBenchmark {
+
+    private static final byte[] REQUEST =
+            "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private StandInTlsOrigin origin;
+    private HttpHost host;
+    private ProxyTlsContext tlsContext;
+
+    @Setup
+    public void setUp() throws IOException {
+        origin = new StandInTlsOrigin(0, 16);
+        host = new HttpHost("localhost", origin.getPort(), "https");
+        tlsContext = new ProxyTlsContext(new HttpClientConfig());
+    }
+
+    @Benchmark
+    public int perClientSslContext() throws Exception {
+        SSLContext sslContext = SSLContextBuilder.create()
+                .loadTrustMaterial(null, (certificate, authType) -> true)
+                .build();
+        return exchange(new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE));
+    }
+
+    @Benchmark
+    public int sharedTlsContext() throws IOException {
+        return exchange(tlsContext.getSocketFactory());
+    }
+
+    // Connect, handshake and read the first response byte, which also takes in the TLS 1.3 session ticket.
+    // TCP_NODELAY as the pooled connection manager sets it by default.
+    private int exchange(SSLConnectionSocketFactory socketFactory) throws IOException {
+        HttpContext context = HttpClientContext.create();
+        Socket plain = socketFactory.createSocket(context);
+        plain.setTcpNoDelay(true);
+        try (Socket socket = socketFactory.connectSocket(5000, plain, host, origin.getAddress(), null, context)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            return socket.getInputStream().read();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        origin.close();
+        System.out.println("Shared context: " + tlsContext);
+    }
+}
@@ -1,8 +1,10 @@
+import com.enterprise.proxy.service.ChunkedUploader;
+import com.enterprise.proxy.service.FileRegionBody;
+import com.enterprise.proxy.service.OAuthTokenProvider;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
@@ -10,6 +12,8 @@ import org.apache.http.util.EntityUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class ApiTestClient {
 
@@ -17,67 +21,52 @@ public class ApiTestClient {
     private static final String TOKEN_URL = "";       // 认证服务地址 (获取 access token)
     private static final String API_ENDPOINT = "";    // 目标 API 地址 (文件上传)
     private static final String SCOPE = "";           // e.g. api://xxxx/api-gateway/.default
+    private static final String CHUNKED_UPLOAD_ENDPOINT = "";  // 分片上传地址（可选，为空则使用普通上传）
+    private static final int UPLOAD_PARALLELISM = 4;
 
     public static void main(String[] args) throws Exception {
-        // 1. 获取 Access Token
-        String tokenResponse = getAccessToken();
-        System.out.println("Token Response: " + tokenResponse);
-
-        // ⚠️ 你需要从 tokenResponse 里解析出 access_token 字段
-        // 这里简单起见假设你直接取整个响应，实际用 JSON 库解析更安全
-        String accessToken = extractAccessToken(tokenResponse);
-
-        // 2. 上传文件
-        uploadFile(accessToken, "sample.pdf");  // 你准备一个测试文件
-    }
-
-    private static String getAccessToken() throws IOException {
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            HttpPost post = new HttpPost(TOKEN_URL);
-            post.setHeader("Content-Type", "application/x-www-form-urlencoded");
-
-            String body = "grant_type=client_credentials&scope=" + SCOPE;
-            post.setEntity(new StringEntity(body));
-
-            try (CloseableHttpResponse response = client.execute(post)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                String result = EntityUtils.toString(response.getEntity(), "UTF-8");
-
-                if (statusCode != 200) {
-                    throw new RuntimeException("Failed to get token, status=" + statusCode + ", body=" + result);
-                }
-                return result;
+        // 一个长期复用的 client：token 请求和 API 调用共享连接池
+        try (CloseableHttpClient client = HttpClients.custom()
+                     .setMaxConnPerRoute(UPLOAD_PARALLELISM + 1)
+                     .setMaxConnTotal(UPLOAD_PARALLELISM * 2)
+                     .build();
+             OAuthTokenProvider tokenProvider = new OAuthTokenProvider(client, TOKEN_URL, SCOPE)) {
+            // 1. 获取 Access Token（缓存到过期前，后台自动刷新）
+            String accessToken = tokenProvider.getAccessToken();
+
+            // 2. 上传文件
+            String filePath = "sample.pdf";  // 你准备一个测试文件
+            if (!CHUNKED_UPLOAD_ENDPOINT.isEmpty() && new File(filePath).length() > ChunkedUploader.DEFAULT_CHUNK_SIZE) {
+                // 大文件：并行分片上传，中断后重新运行会从 checkpoint 续传
+                ChunkedUploader uploader = new ChunkedUploader(client, CHUNKED_UPLOAD_ENDPOINT, tokenProvider,
+                        ChunkedUploader.DEFAULT_CHUNK_SIZE, UPLOAD_PARALLELISM);
+                String result = uploader.upload(Paths.get(filePath), ContentType.create("application/pdf"));
+                System.out.println("Chunked Upload Response Body: " + result);
+            } else {
+                uploadFile(client, accessToken, filePath);
             }
         }
     }
 
-    private static void uploadFile(String accessToken, String filePath) throws IOException {
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            HttpPost post = new HttpPost(API_ENDPOINT);
-            post.setHeader("Authorization", "Bearer " + accessToken);
+    private static void uploadFile(CloseableHttpClient client, String accessToken, String filePath) throws IOException {
+        HttpPost post = new HttpPost(API_ENDPOINT);
+        post.setHeader("Authorization", "Bearer " + accessToken);
 
-            File file = new File(filePath);
-            HttpEntity entity = MultipartEntityBuilder.create()
-                    .addBinaryBody("content", file, ContentType.APPLICATION_PDF, file.getName())
-                    .build();
+        // 文件内容不经过堆缓冲：大文件用内存映射写出
+        Path file = Paths.get(filePath);
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addPart("content", new FileRegionBody(file, ContentType.create("application/pdf"),
+                        file.getFileName().toString()))
+                .build();
 
-            post.setEntity(entity);
+        post.setEntity(entity);
 
-            try (CloseableHttpResponse response = client.execute(post)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                String result = EntityUtils.toString(response.getEntity(), "UTF-8");
+        try (CloseableHttpResponse response = client.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String result = EntityUtils.toString(response.getEntity(), "UTF-8");
 
-                System.out.println("Upload Response Status: " + statusCode);
-                System.out.println("Response Body: " + result);
-            }
+            System.out.println("Upload Response Status: " + statusCode);
+            System.out.println("Response Body: " + result);
         }
     }
-
-    // 简单的解析函数（你可以替换成 Jackson 或 Gson）
-    private static String extractAccessToken(String jsonResponse) {
-        // 假设返回格式: {"access_token":"xxxxx","token_type":"Bearer","expires_in":3600}
-        int start = jsonResponse.indexOf("access_token") + 15;
-        int end = jsonResponse.indexOf("\"", start);
-        return jsonResponse.substring(start, end);
-    }
 }
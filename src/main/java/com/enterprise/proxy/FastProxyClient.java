@@ -0,0 +1,237 @@
+package com.enterprise.proxy;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.MetricsConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.config.TargetConfig;
+import com.enterprise.proxy.service.CachingDnsResolver;
+import com.enterprise.proxy.service.KerberosCredentialCache;
+import com.enterprise.proxy.service.ProxyAuthRacer;
+import com.enterprise.proxy.service.ProxyAuthSchemeResolver;
+import com.enterprise.proxy.service.ProxyAuthSessionCache;
+import com.enterprise.proxy.service.ProxyEndpointPool;
+import com.enterprise.proxy.service.ProxyMetrics;
+import com.enterprise.proxy.service.ProxyResponseCache;
+import com.enterprise.proxy.service.ProxyService;
+import com.enterprise.proxy.service.ProxyTlsContext;
+import com.enterprise.proxy.service.RequestTimingRecorder;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * One-shot request without the Spring context ({@code --fast}).
+ * <p>
+ * Reads application.properties from the classpath, ./ and ./config/ (later ones win), then system
+ * properties and {@code --key=value} arguments, binds them with Spring Boot's {@link Binder} (the same
+ * rules as {@code @ConfigurationProperties}) and wires {@link ProxyService} and its collaborators by
+ * hand. Component scanning, auto-configuration and bean post-processing, most of the normal startup
+ * time, are skipped. Understands the single-request options of the runner ({@code --target.url},
+ * {@code --output.file}, {@code --output.checksum}); {@code --dry-run} only builds the clients, for
+ * training the AppCDS archive.
+ * Profiles, environment variables and {@code spring.config.*} are not supported.
+ */
+public final class FastProxyClient implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FastProxyClient.class);
+
+    static final String FAST_FLAG = "--fast";
+
+    private final ProxyConfig proxyConfig = new ProxyConfig();
+    private final HttpClientConfig httpClientConfig = new HttpClientConfig();
+    private final TargetConfig targetConfig = new TargetConfig();
+    private final MetricsConfig metricsConfig = new MetricsConfig();
+    private final CachingDnsResolver dnsResolver;
+    private final KerberosCredentialCache kerberosCredentials;
+    private final ProxyMetrics metrics;
+    private final RequestTimingRecorder timings;
+    private final ProxyEndpointPool endpointPool;
+    private final ProxyAuthRacer authRacer;
+    private final ProxyService proxyService;
+
+    FastProxyClient(Binder binder) {
+        binder.bind("proxy", Bindable.ofInstance(proxyConfig));
+        binder.bind("http.client", Bindable.ofInstance(httpClientConfig));
+        binder.bind("target", Bindable.ofInstance(targetConfig));
+        binder.bind("metrics", Bindable.ofInstance(metricsConfig));
+
+        // Same graph the context would build for ProxyService
+        ProxyAuthSessionCache sessionCache = new ProxyAuthSessionCache(proxyConfig);
+        ProxyResponseCache responseCache = new ProxyResponseCache(httpClientConfig);
+        ProxyTlsContext tlsContext = new ProxyTlsContext(httpClientConfig);
+        dnsResolver = new CachingDnsResolver(httpClientConfig);
+        kerberosCredentials = new KerberosCredentialCache(proxyConfig);
+        metrics = new ProxyMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), metricsConfig,
+                sessionCache, tlsContext, kerberosCredentials, responseCache, dnsResolver);
+        timings = new RequestTimingRecorder(httpClientConfig);
+        endpointPool = new ProxyEndpointPool(proxyConfig, dnsResolver);
+        authRacer = new ProxyAuthRacer(proxyConfig);
+        proxyService = new ProxyService(proxyConfig, httpClientConfig, targetConfig,
+                new ProxyAuthSchemeResolver(proxyConfig), sessionCache, responseCache, tlsContext,
+                kerberosCredentials, metrics, timings, dnsResolver, endpointPool, authRacer);
+        endpointPool.start();
+        proxyService.initClients();
+    }
+
+    static boolean isRequested(String[] args) {
+        for (String arg : args) {
+            if (FAST_FLAG.equals(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs one request as the runner would and returns the process exit code.
+     */
+    static int run(String[] args) {
+        String targetUrl = null;
+        String outputFile = null;
+        String outputChecksum = null;
+        boolean dryRun = false;
+        Map<String, Object> overrides = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--target.url".equals(arg) && i + 1 < args.length) {
+                targetUrl = args[++i];
+            } else if ("--output.file".equals(arg) && i + 1 < args.length) {
+                outputFile = args[++i];
+            } else if ("--output.checksum".equals(arg) && i + 1 < args.length) {
+                outputChecksum = args[++i];
+            } else if ("--dry-run".equals(arg)) {
+                dryRun = true;
+            } else if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+                overrides.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+
+        Binder binder;
+        try {
+            binder = binder(overrides);
+        } catch (IOException e) {
+            System.err.println("Failed to read application.properties: " + e.getMessage());
+            return 2;
+        }
+        applyLogLevels(binder);
+
+        try (FastProxyClient client = new FastProxyClient(binder)) {
+            if (dryRun) {
+                logger.info("Dry run: clients built, no request sent");
+                return 0;
+            }
+            return client.execute(targetUrl, outputFile, outputChecksum);
+        }
+    }
+
+    private int execute(String targetUrl, String outputFile, String outputChecksum) {
+        int exitCode = 0;
+        try {
+            if (outputFile != null) {
+                long bytes = proxyService.downloadToFile(targetUrl, Paths.get(outputFile), outputChecksum);
+                logger.info("Wrote {} bytes to [{}]", bytes, outputFile);
+            } else {
+                proxyService.executeRequestToStream(targetUrl, System.out);
+                System.out.println();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            exitCode = 1;
+        }
+        String timingSummary = timings.summary();
+        if (timingSummary != null) {
+            logger.info("Request timing:\n{}", timingSummary);
+        }
+        return exitCode;
+    }
+
+    // Shutdown order of the context: dependants first
+    @Override
+    public void close() {
+        proxyService.closeClients();
+        authRacer.close();
+        endpointPool.close();
+        timings.close();
+        metrics.dump();
+        kerberosCredentials.close();
+        dnsResolver.close();
+    }
+
+    // Highest precedence first, as the Binder expects
+    private static Binder binder(Map<String, Object> overrides) throws IOException {
+        List<ConfigurationPropertySource> sources = new ArrayList<>();
+        sources.add(new MapConfigurationPropertySource(overrides));
+        sources.add(new MapConfigurationPropertySource(System.getProperties()));
+        List<Properties> files = new ArrayList<>();
+        files.add(classpathProperties("application.properties"));
+        files.add(classpathProperties("config/application.properties"));
+        files.add(fileProperties(Paths.get("application.properties")));
+        files.add(fileProperties(Paths.get("config", "application.properties")));
+        Collections.reverse(files);
+        for (Properties properties : files) {
+            if (!properties.isEmpty()) {
+                sources.add(new MapConfigurationPropertySource(properties));
+            }
+        }
+        return new Binder(sources);
+    }
+
+    private static Properties classpathProperties(String name) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = FastProxyClient.class.getClassLoader().getResourceAsStream(name);
+        if (in != null) {
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.ISO_8859_1)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private static Properties fileProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.isRegularFile(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    // logging.level.* as Spring Boot applies it, on logback's default console setup
+    private static void applyLogLevels(Binder binder) {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+            return;
+        }
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.INFO);
+        Map<String, String> levels = binder.bind("logging.level", Bindable.mapOf(String.class, String.class))
+                .orElse(Collections.emptyMap());
+        for (Map.Entry<String, String> entry : levels.entrySet()) {
+            String name = "root".equalsIgnoreCase(entry.getKey()) ? Logger.ROOT_LOGGER_NAME : entry.getKey();
+            context.getLogger(name).setLevel(Level.toLevel(entry.getValue(), null));
+        }
+    }
+}
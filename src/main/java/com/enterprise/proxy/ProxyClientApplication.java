@@ -9,6 +9,19 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 public class ProxyClientApplication {
     
     public static void main(String[] args) {
+        applySystemDefaults();
+        
+        if (FastProxyClient.isRequested(args)) {
+            // One-shot request without the Spring context
+            System.exit(FastProxyClient.run(args));
+        }
+        
+        System.setProperty("spring.main.web-application-type", "none");
+        SpringApplication.run(ProxyClientApplication.class, args);
+    }
+    
+    // JVM-wide network and auth settings, shared by the Spring and the fast path
+    static void applySystemDefaults() {
         // CRITICAL: Disable SOCKS before ANYTHING else
         System.setProperty("java.net.useSystemProxies", "false");
         System.clearProperty("socksProxyHost");
@@ -28,13 +41,8 @@ public class ProxyClientApplication {
         System.setProperty("sun.security.spnego.debug", "false");
         System.setProperty("javax.security.auth.useSubjectCredsOnly", "false");
         
-        // Network settings
-        System.setProperty("networkaddress.cache.ttl", "0");
-        System.setProperty("networkaddress.cache.negative.ttl", "0");
+        // Network settings; proxy host lookups are cached by CachingDnsResolver (http.client.dns.*)
         System.setProperty("java.net.preferIPv4Stack", "true");
         System.setProperty("java.net.preferIPv6Addresses", "false");
-        
-        System.setProperty("spring.main.web-application-type", "none");
-        SpringApplication.run(ProxyClientApplication.class, args);
     }
 }
\ No newline at end of file
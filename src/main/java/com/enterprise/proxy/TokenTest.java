@@ -1,6 +1,8 @@
 package com.enterprise.proxy;
+import com.enterprise.proxy.service.OAuthTokenProvider;
 import org.apache.http.*;
 import org.apache.http.client.methods.*;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.*;
 import org.apache.http.impl.client.*;
 import org.apache.http.message.*;
@@ -25,28 +27,16 @@ public class TokenTest {
         // ==========================================
 
         // Build HttpClient with SSL context (client certificate authentication)
-        CloseableHttpClient client = HttpClients.custom()
+        // One long-lived mTLS client: the token provider reuses its pooled connections
+        try (CloseableHttpClient client = HttpClients.custom()
                 .setSSLSocketFactory(buildSSLConnectionSocketFactory(certPath, keyPath, keystorePassword))
                 .build();
+             OAuthTokenProvider tokenProvider = new OAuthTokenProvider(client, tokenUrl, scope)) {
 
-        // Create POST request
-        HttpPost post = new HttpPost(tokenUrl);
-        post.setHeader(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded");
-
-        // Add form parameters
-        List<NameValuePair> form = new ArrayList<>();
-        form.add(new BasicNameValuePair("grant_type", "client_credentials"));
-        form.add(new BasicNameValuePair("scope", scope));
-        post.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
-
-        // Debug: print request body
-        System.out.println(">>> Request body: " + EntityUtils.toString(post.getEntity(), StandardCharsets.UTF_8));
-
-        // Execute request
-        try (CloseableHttpResponse resp = client.execute(post)) {
-            String body = EntityUtils.toString(resp.getEntity(), StandardCharsets.UTF_8);
-            System.out.println(">>> Response status: " + resp.getStatusLine());
-            System.out.println(">>> Response body: " + body);
+            // Token is cached until shortly before expires_in; repeated calls do not hit the endpoint
+            String accessToken = tokenProvider.getAccessToken();
+            System.out.println(">>> Access token length: " + accessToken.length());
+            System.out.println(">>> Cached on second call: " + accessToken.equals(tokenProvider.getAccessToken()));
         }
     }
 
@@ -0,0 +1,109 @@
+package com.enterprise.proxy.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "daemon")
+public class DaemonConfig {
+
+    // Local listener; keep it on loopback, clients are not authenticated
+    private String bindAddress = "127.0.0.1";
+    private int port = 3128;
+
+    // Open client connections (tunnels and requests in flight); further clients get 503
+    private int maxConnections = 256;
+
+    // Threads for upstream CONNECT handshakes and forwarded requests; further work gets 503
+    private int workers = 32;
+
+    // Per-direction tunnel buffer; a full buffer stops reading from the other side
+    private int bufferSize = 32768;
+
+    // Time allowed for a client to send its request head (ms)
+    private int headerTimeout = 10000;
+
+    // Tunnels without traffic in either direction are closed after this (ms)
+    private long idleTimeout = 300000;
+
+    // On shutdown, open connections may finish for this long before they are closed (ms)
+    private long drainTimeout = 30000;
+
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    public void setBindAddress(String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getHeaderTimeout() {
+        return headerTimeout;
+    }
+
+    public void setHeaderTimeout(int headerTimeout) {
+        this.headerTimeout = headerTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return "DaemonConfig{" +
+                "bindAddress='" + bindAddress + '\'' +
+                ", port=" + port +
+                ", maxConnections=" + maxConnections +
+                ", workers=" + workers +
+                ", bufferSize=" + bufferSize +
+                ", headerTimeout=" + headerTimeout +
+                ", idleTimeout=" + idleTimeout +
+                ", drainTimeout=" + drainTimeout +
+                '}';
+    }
+}
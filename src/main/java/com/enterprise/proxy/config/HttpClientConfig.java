@@ -8,6 +8,14 @@ import org.springframework.context.annotation.Configuration;
 public class HttpClientConfig {
     
     private Connection connection = new Connection();
+    private Pool pool = new Pool();
+    private Async async = new Async();
+    private Cache cache = new Cache();
+    private Tls tls = new Tls();
+    private Timing timing = new Timing();
+    private Dns dns = new Dns();
+    private Upload upload = new Upload();
+    private Download download = new Download();
     private int socketTimeout = 30000;
     
     public Connection getConnection() {
@@ -18,6 +26,70 @@ public class HttpClientConfig {
         this.connection = connection;
     }
     
+    public Pool getPool() {
+        return pool;
+    }
+    
+    public void setPool(Pool pool) {
+        this.pool = pool;
+    }
+    
+    public Async getAsync() {
+        return async;
+    }
+    
+    public void setAsync(Async async) {
+        this.async = async;
+    }
+    
+    public Cache getCache() {
+        return cache;
+    }
+    
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+    
+    public Tls getTls() {
+        return tls;
+    }
+    
+    public void setTls(Tls tls) {
+        this.tls = tls;
+    }
+    
+    public Timing getTiming() {
+        return timing;
+    }
+    
+    public void setTiming(Timing timing) {
+        this.timing = timing;
+    }
+    
+    public Dns getDns() {
+        return dns;
+    }
+    
+    public void setDns(Dns dns) {
+        this.dns = dns;
+    }
+    
+    public Upload getUpload() {
+        return upload;
+    }
+    
+    public void setUpload(Upload upload) {
+        this.upload = upload;
+    }
+    
+    public Download getDownload() {
+        return download;
+    }
+    
+    public void setDownload(Download download) {
+        this.download = download;
+    }
+    
     public int getSocketTimeout() {
         return socketTimeout;
     }
@@ -46,4 +118,266 @@ public class HttpClientConfig {
             this.requestTimeout = requestTimeout;
         }
     }
-}
\ No newline at end of file
+    
+    // Connection pool settings shared by the long-lived per-auth-mode clients
+    public static class Pool {
+        private int maxTotal = 50;
+        private int maxPerRoute = 20;
+        // Used when the server does not send a Keep-Alive timeout header
+        private long keepAlive = 30000;
+        // Idle connections older than this are evicted by a background thread
+        private long idleTimeout = 60000;
+        private int validateAfterInactivity = 2000;
+        
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+        
+        public void setMaxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+        }
+        
+        public int getMaxPerRoute() {
+            return maxPerRoute;
+        }
+        
+        public void setMaxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+        }
+        
+        public long getKeepAlive() {
+            return keepAlive;
+        }
+        
+        public void setKeepAlive(long keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+        
+        public long getIdleTimeout() {
+            return idleTimeout;
+        }
+        
+        public void setIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+        
+        public int getValidateAfterInactivity() {
+            return validateAfterInactivity;
+        }
+        
+        public void setValidateAfterInactivity(int validateAfterInactivity) {
+            this.validateAfterInactivity = validateAfterInactivity;
+        }
+    }
+    
+    // NIO settings for the asynchronous request engine
+    public static class Async {
+        private int ioThreads = 2;
+        
+        public int getIoThreads() {
+            return ioThreads;
+        }
+        
+        public void setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+        }
+    }
+    
+    // RFC 7234 response cache for proxied GETs: in-memory LRU tier plus optional disk tier
+    public static class Cache {
+        private boolean enabled = false;
+        private int maxEntries = 1000;
+        // Responses larger than this are passed through and not cached
+        private long maxObjectSize = 1048576;
+        // Disk tier is disabled when no directory is configured
+        private String diskDir;
+        private long diskMaxBytes = 536870912;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+        
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+        
+        public long getMaxObjectSize() {
+            return maxObjectSize;
+        }
+        
+        public void setMaxObjectSize(long maxObjectSize) {
+            this.maxObjectSize = maxObjectSize;
+        }
+        
+        public String getDiskDir() {
+            return diskDir;
+        }
+        
+        public void setDiskDir(String diskDir) {
+            this.diskDir = diskDir;
+        }
+        
+        public long getDiskMaxBytes() {
+            return diskMaxBytes;
+        }
+        
+        public void setDiskMaxBytes(long diskMaxBytes) {
+            this.diskMaxBytes = diskMaxBytes;
+        }
+    }
+    
+    // Shared TLS layer: client session cache used to resume sessions on new connections
+    public static class Tls {
+        private int sessionCacheSize = 1000;
+        // Seconds, as used by SSLSessionContext
+        private int sessionTimeout = 86400;
+        
+        public int getSessionCacheSize() {
+            return sessionCacheSize;
+        }
+        
+        public void setSessionCacheSize(int sessionCacheSize) {
+            this.sessionCacheSize = sessionCacheSize;
+        }
+        
+        public int getSessionTimeout() {
+            return sessionTimeout;
+        }
+        
+        public void setSessionTimeout(int sessionTimeout) {
+            this.sessionTimeout = sessionTimeout;
+        }
+    }
+    
+    // Per-request phase timing (DNS, connect, CONNECT, 407 legs, TLS, TTFB, body)
+    public static class Timing {
+        private boolean enabled = false;
+        // JSON lines file (appended); empty = write to the com.enterprise.proxy.timing logger
+        private String file;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public String getFile() {
+            return file;
+        }
+        
+        public void setFile(String file) {
+            this.file = file;
+        }
+    }
+    
+    // Resolver cache for the pooled clients (replaces the JVM-wide networkaddress.cache.ttl=0)
+    public static class Dns {
+        private boolean enabled = true;
+        private long ttl = 60000;
+        // Hosts in use are looked up again this long before their entry expires
+        private long refreshAhead = 10000;
+        // Hosts that failed to resolve are not looked up again for this long
+        private long negativeTtl = 5000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getTtl() {
+            return ttl;
+        }
+        
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+        
+        public long getRefreshAhead() {
+            return refreshAhead;
+        }
+        
+        public void setRefreshAhead(long refreshAhead) {
+            this.refreshAhead = refreshAhead;
+        }
+        
+        public long getNegativeTtl() {
+            return negativeTtl;
+        }
+        
+        public void setNegativeTtl(long negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+    }
+    
+    // File upload bodies on the pooled clients
+    public static class Upload {
+        // Channel-backed plain sockets, so file bodies go to the socket with sendfile. Off by default:
+        // it applies to every pooled connection, and sockets then read through NIO adaptors
+        private boolean zeroCopy = false;
+        
+        public boolean isZeroCopy() {
+            return zeroCopy;
+        }
+        
+        public void setZeroCopy(boolean zeroCopy) {
+            this.zeroCopy = zeroCopy;
+        }
+    }
+    
+    // Downloads to a file (--output.file)
+    public static class Download {
+        // Byte ranges fetched in parallel over separate connections; 1 = single stream
+        private int parallelism = 1;
+        // Files are not split into ranges smaller than this
+        private long minPartSize = 8 * 1024 * 1024;
+        // A failed range is resumed from where it stopped this many times
+        private int retries = 3;
+        // Keep progress in a .download-checkpoint file so a later run resumes
+        private boolean resume = false;
+        
+        public int getParallelism() {
+            return parallelism;
+        }
+        
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+        
+        public long getMinPartSize() {
+            return minPartSize;
+        }
+        
+        public void setMinPartSize(long minPartSize) {
+            this.minPartSize = minPartSize;
+        }
+        
+        public int getRetries() {
+            return retries;
+        }
+        
+        public void setRetries(int retries) {
+            this.retries = retries;
+        }
+        
+        public boolean isResume() {
+            return resume;
+        }
+        
+        public void setResume(boolean resume) {
+            this.resume = resume;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.enterprise.proxy.config;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "metrics")
+public class MetricsConfig {
+    
+    // Prometheus text file written at shutdown (e.g. for the node_exporter textfile collector); empty = off
+    private String dumpFile;
+    
+    /**
+     * Registry for all proxy client meters; its scrape() output is the Prometheus text format.
+     */
+    @Bean
+    public PrometheusMeterRegistry meterRegistry() {
+        return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+    
+    public String getDumpFile() {
+        return dumpFile;
+    }
+    
+    public void setDumpFile(String dumpFile) {
+        this.dumpFile = dumpFile;
+    }
+    
+    @Override
+    public String toString() {
+        return "MetricsConfig{" +
+                "dumpFile='" + dumpFile + '\'' +
+                '}';
+    }
+}
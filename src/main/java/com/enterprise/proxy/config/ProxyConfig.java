@@ -3,6 +3,9 @@ package com.enterprise.proxy.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @ConfigurationProperties(prefix = "proxy")
 public class ProxyConfig {
@@ -19,6 +22,18 @@ public class ProxyConfig {
     // Domain username for NTLM authentication (if different from username)
     private String domainUsername;
     
+    // Auth scheme resolution (remembered winner / negative cache)
+    private Auth auth = new Auth();
+    
+    // Cached Kerberos login used by the SPNEGO path
+    private Kerberos kerberos = new Kerberos();
+    
+    // Proxy nodes (host:port) sharing the credentials; empty = host/port only
+    private List<String> endpoints = new ArrayList<>();
+    
+    // Background health checks of the endpoints
+    private Health health = new Health();
+    
     public ProxyConfig() {
     }
     
@@ -78,6 +93,38 @@ public class ProxyConfig {
         this.domainUsername = domainUsername;
     }
     
+    public Auth getAuth() {
+        return auth;
+    }
+    
+    public void setAuth(Auth auth) {
+        this.auth = auth;
+    }
+    
+    public Kerberos getKerberos() {
+        return kerberos;
+    }
+    
+    public void setKerberos(Kerberos kerberos) {
+        this.kerberos = kerberos;
+    }
+    
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+    
+    public void setEndpoints(List<String> endpoints) {
+        this.endpoints = endpoints;
+    }
+    
+    public Health getHealth() {
+        return health;
+    }
+    
+    public void setHealth(Health health) {
+        this.health = health;
+    }
+    
     @Override
     public String toString() {
         return "ProxyConfig{" +
@@ -87,6 +134,116 @@ public class ProxyConfig {
                 ", domain='" + domain + '\'' +
                 ", bbsAlias='" + bbsAlias + '\'' +
                 ", domainUsername='" + domainUsername + '\'' +
+                ", endpoints=" + endpoints +
                 '}';
     }
-}
\ No newline at end of file
+    
+    public static class Auth {
+        // How long a scheme that worked is used directly before the full chain is probed again
+        private long schemeTtl = 1800000;
+        // How long a scheme that returned 407 is skipped
+        private long negativeTtl = 300000;
+        // Start all candidate schemes in parallel while no scheme is known to work
+        private boolean race = false;
+        // Delay before each further scheme is started (unless the previous one already failed)
+        private long raceStagger = 250;
+        // Send Basic (and Digest, once a nonce is known) proxy credentials without waiting for a 407
+        private boolean preemptive = true;
+        
+        public long getSchemeTtl() {
+            return schemeTtl;
+        }
+        
+        public void setSchemeTtl(long schemeTtl) {
+            this.schemeTtl = schemeTtl;
+        }
+        
+        public long getNegativeTtl() {
+            return negativeTtl;
+        }
+        
+        public void setNegativeTtl(long negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+        
+        public boolean isRace() {
+            return race;
+        }
+        
+        public void setRace(boolean race) {
+            this.race = race;
+        }
+        
+        public long getRaceStagger() {
+            return raceStagger;
+        }
+        
+        public void setRaceStagger(long raceStagger) {
+            this.raceStagger = raceStagger;
+        }
+        
+        public boolean isPreemptive() {
+            return preemptive;
+        }
+        
+        public void setPreemptive(boolean preemptive) {
+            this.preemptive = preemptive;
+        }
+    }
+    
+    public static class Kerberos {
+        // Renew the TGT this long before it expires (at most half its lifetime)
+        private long renewBefore = 600000;
+        // Wait this long after a failed login or renewal before contacting the KDC again
+        private long retryInterval = 60000;
+        
+        public long getRenewBefore() {
+            return renewBefore;
+        }
+        
+        public void setRenewBefore(long renewBefore) {
+            this.renewBefore = renewBefore;
+        }
+        
+        public long getRetryInterval() {
+            return retryInterval;
+        }
+        
+        public void setRetryInterval(long retryInterval) {
+            this.retryInterval = retryInterval;
+        }
+    }
+    
+    public static class Health {
+        // How often every endpoint is probed with a TCP connect
+        private long interval = 2000;
+        // Connect timeout for probes and for connections to an endpoint when there are several
+        private int connectTimeout = 1000;
+        // Read timeout for the CONNECT exchange with an endpoint when there are several
+        private int readTimeout = 10000;
+        
+        public long getInterval() {
+            return interval;
+        }
+        
+        public void setInterval(long interval) {
+            this.interval = interval;
+        }
+        
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+        
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+        
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+        
+        public void setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+    }
+}
@@ -0,0 +1,765 @@
+package com.enterprise.proxy.daemon;
+
+import com.enterprise.proxy.config.DaemonConfig;
+import com.enterprise.proxy.service.BufferPool;
+import com.enterprise.proxy.service.EntityStreams;
+import com.enterprise.proxy.service.ProxyService;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running local proxy ({@code --daemon}) that lets other processes on the machine go through
+ * the corporate proxy without doing its authentication themselves.
+ * <p>
+ * One selector thread accepts clients on {@code daemon.bind-address} and reads their request heads.
+ * A CONNECT goes to a worker, which opens an authenticated tunnel with {@link UpstreamTunnelConnector};
+ * the selector then relays bytes both ways. Any other request (absolute URI) goes to a worker that
+ * sends it with {@link ProxyService#forward}, over the pooled connections the proxy has already
+ * authenticated, and answers with {@code Connection: close}.
+ * <p>
+ * Limits: at most {@code max-connections} clients and {@code workers} handshakes or requests at a
+ * time, beyond which clients get a 503. Each tunnel direction has a {@code buffer-size} buffer; while
+ * it is full the selector stops reading from the sending side, so a slow reader slows the writer
+ * down instead of growing the heap. {@link #close()} stops accepting and gives open connections
+ * {@code drain-timeout} to finish.
+ */
+@Component
+public class LocalForwardingProxy {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalForwardingProxy.class);
+
+    private static final int MAX_HEAD = 16384;
+    // Bodies up to this size are buffered so the request can be retried with another scheme
+    private static final int MAX_BUFFERED_BODY = 1024 * 1024;
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+    private static final byte[] CONNECTION_ESTABLISHED =
+            "HTTP/1.1 200 Connection established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    // Not forwarded in either direction (RFC 7230 6.1), plus headers HttpClient sets itself
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+            "connection", "proxy-connection", "keep-alive", "proxy-authorization", "proxy-authenticate",
+            "te", "trailer", "transfer-encoding", "upgrade", "expect", "content-length"));
+
+    private final DaemonConfig config;
+    private final ProxyService proxyService;
+    private final UpstreamTunnelConnector connector;
+
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    // Connections owned by the selector thread: reading the head, or tunnelling
+    private final Set<Connection> connections = new HashSet<>();
+    private final Set<HttpUriRequest> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger open = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private Selector selector;
+    private ServerSocketChannel server;
+    private ThreadPoolExecutor workers;
+    private volatile boolean started;
+    private volatile boolean stopped;
+    private volatile long drainDeadline;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong tunnels = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Autowired
+    public LocalForwardingProxy(DaemonConfig config, ProxyService proxyService, UpstreamTunnelConnector connector) {
+        this.config = config;
+        this.proxyService = proxyService;
+        this.connector = connector;
+    }
+
+    public synchronized void start() throws IOException {
+        if (started) {
+            return;
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getByName(config.getBindAddress()), config.getPort()), 128);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getWorkers()), r -> {
+                    Thread t = new Thread(r, "local-proxy-worker-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        Thread selectorThread = new Thread(this::run, "local-proxy");
+        selectorThread.start();
+        started = true;
+        logger.info("Local forwarding proxy listening on {} ({})", server.getLocalAddress(), config);
+    }
+
+    /**
+     * Port the listener is bound to, e.g. when {@code daemon.port} is 0.
+     */
+    int getLocalPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Blocks until the proxy has stopped.
+     */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    /**
+     * Stops accepting, waits up to drain-timeout for open connections, then closes the rest.
+     */
+    @PreDestroy
+    public void close() {
+        if (!started || drainDeadline != 0) {
+            return;
+        }
+        logger.info("Draining local forwarding proxy: {} open connection(s), up to {} ms", open.get(),
+                config.getDrainTimeout());
+        drainDeadline = System.currentTimeMillis() + config.getDrainTimeout();
+        selector.wakeup();
+        try {
+            if (!terminated.await(config.getDrainTimeout() + 5000, TimeUnit.MILLISECONDS)) {
+                logger.warn("Local forwarding proxy did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        logger.info("Local forwarding proxy stopped: {}", this);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                selector.select(SWEEP_INTERVAL);
+                runPending();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                long now = System.currentTimeMillis();
+                sweep(now);
+                if (drainDeadline != 0) {
+                    if (server.isOpen()) {
+                        server.close();
+                    }
+                    if (open.get() == 0 || now >= drainDeadline) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Local forwarding proxy failed: {}", e.toString(), e);
+        } finally {
+            stopped = true;
+            for (Connection conn : new ArrayList<>(connections)) {
+                close(conn);
+            }
+            for (HttpUriRequest request : inFlight) {
+                request.abort();
+            }
+            runPending();
+            closeQuietly(server);
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+            terminated.countDown();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection conn = (Connection) key.attachment();
+        try {
+            if (conn.head != null) {
+                readHead(conn);
+            } else {
+                relay(conn, key);
+            }
+        } catch (IOException e) {
+            logger.debug("Local proxy connection closed: {}", e.getMessage());
+            close(conn);
+        } catch (RuntimeException e) {
+            // One broken connection must not take the selector thread down with it
+            logger.warn("Local proxy connection failed: {}", e.toString(), e);
+            close(conn);
+        }
+    }
+
+    private void accept() {
+        SocketChannel client;
+        try {
+            client = server.accept();
+            if (client == null) {
+                return;
+            }
+        } catch (IOException e) {
+            logger.warn("Accept failed: {}", e.getMessage());
+            return;
+        }
+        if (open.get() >= config.getMaxConnections()) {
+            rejected.incrementAndGet();
+            logger.warn("Connection limit ({}) reached, rejecting client", config.getMaxConnections());
+            respondAndClose(client, 503, "Too many connections");
+            return;
+        }
+        open.incrementAndGet();
+        accepted.incrementAndGet();
+        Connection conn = new Connection(client);
+        try {
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            conn.clientKey = client.register(selector, SelectionKey.OP_READ, conn);
+            connections.add(conn);
+        } catch (IOException e) {
+            close(conn);
+        }
+    }
+
+    private void readHead(Connection conn) throws IOException {
+        if (conn.client.read(conn.head) < 0) {
+            close(conn);
+            return;
+        }
+        int end = indexOf(conn.head, HEAD_END);
+        if (end < 0) {
+            if (!conn.head.hasRemaining()) {
+                reject(conn, 431, "Request header too large");
+            }
+            return;
+        }
+        conn.head.flip();
+        byte[] headBytes = new byte[end];
+        conn.head.get(headBytes);
+        conn.head.position(end + HEAD_END.length);
+        ByteBuffer rest = conn.head.slice();
+        conn.head = null;
+
+        Request request;
+        try {
+            request = Request.parse(new String(headBytes, StandardCharsets.ISO_8859_1));
+        } catch (IllegalArgumentException e) {
+            reject(conn, 400, e.getMessage());
+            return;
+        }
+        if ("CONNECT".equalsIgnoreCase(request.method)) {
+            conn.clientKey.interestOps(0);
+            conn.lastActivity = System.currentTimeMillis();
+            submit(conn, () -> openTunnel(conn, request, rest));
+        } else if (request.target.startsWith("http://") || request.target.startsWith("https://")) {
+            // The worker owns the connection from here, with blocking I/O. The channel can only be
+            // made blocking once the next select has deregistered the cancelled key, so the switch
+            // waits for the pending queue rather than running inside the selected-key iteration.
+            connections.remove(conn);
+            conn.handedOff = true;
+            conn.clientKey.cancel();
+            onSelector(() -> handOff(conn, request, rest));
+        } else {
+            reject(conn, 400, "Only CONNECT and absolute-URI requests are supported");
+        }
+    }
+
+    private void handOff(Connection conn, Request request, ByteBuffer rest) {
+        if (stopped || conn.closed.get()) {
+            close(conn);
+            return;
+        }
+        try {
+            conn.client.configureBlocking(true);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Local proxy connection closed: {}", e.toString());
+            close(conn);
+            return;
+        }
+        submit(conn, () -> forward(conn, request, rest));
+    }
+
+    private void submit(Connection conn, Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            logger.warn("All {} workers busy, rejecting request", config.getWorkers());
+            reject(conn, 503, "Proxy busy");
+        }
+    }
+
+    // Worker: upstream handshake, then back to the selector to start relaying
+    private void openTunnel(Connection conn, Request request, ByteBuffer rest) {
+        UpstreamTunnelConnector.Tunnel tunnel;
+        try {
+            tunnel = connector.connect(request.target, request.header("User-Agent"));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("CONNECT {} failed: {}", request.target, e.toString());
+            tunnel = null;
+        }
+        UpstreamTunnelConnector.Tunnel result = tunnel;
+        onSelector(() -> tunnelOpened(conn, request, rest, result));
+    }
+
+    private void tunnelOpened(Connection conn, Request request, ByteBuffer rest, UpstreamTunnelConnector.Tunnel tunnel) {
+        if (stopped || conn.closed.get()) {
+            if (tunnel != null) {
+                closeQuietly(tunnel.channel);
+            }
+            return;
+        }
+        if (tunnel == null || !tunnel.isOpen()) {
+            failed.incrementAndGet();
+            if (tunnel == null) {
+                reject(conn, 502, "Upstream proxy unreachable");
+            } else if (tunnel.status == 407) {
+                logger.warn("CONNECT {} rejected by upstream proxy: {}", request.target, tunnel.reason);
+                reject(conn, 502, "Upstream proxy authentication failed");
+            } else {
+                reject(conn, tunnel.status, tunnel.reason);
+            }
+            return;
+        }
+        try {
+            conn.upstream = tunnel.channel;
+            conn.upstream.configureBlocking(false);
+            conn.upstreamKey = conn.upstream.register(selector, 0, conn);
+            // Direct, so socket reads and writes don't go through a temporary copy
+            conn.toClient = BufferPool.shared().acquireDirect(Math.max(config.getBufferSize(),
+                    CONNECTION_ESTABLISHED.length + tunnel.leftover.remaining()));
+            conn.toClient.put(CONNECTION_ESTABLISHED).put(tunnel.leftover);
+            conn.toUpstream = BufferPool.shared().acquireDirect(Math.max(config.getBufferSize(), rest.remaining()));
+            conn.toUpstream.put(rest);
+            conn.lastActivity = System.currentTimeMillis();
+            tunnels.incrementAndGet();
+            logger.debug("Tunnel to {} open", request.target);
+            updateInterest(conn);
+        } catch (IOException e) {
+            close(conn);
+        }
+    }
+
+    // Buffers are kept in fill mode; a full buffer stops reading from the side that fills it
+    private void relay(Connection conn, SelectionKey key) throws IOException {
+        boolean fromClient = key.channel() == conn.client;
+        if (key.isReadable()) {
+            ByteBuffer buffer = fromClient ? conn.toUpstream : conn.toClient;
+            int n = ((SocketChannel) key.channel()).read(buffer);
+            if (n < 0) {
+                if (fromClient) {
+                    conn.clientEof = true;
+                } else {
+                    conn.upstreamEof = true;
+                }
+            } else if (n > 0) {
+                conn.lastActivity = System.currentTimeMillis();
+            }
+        }
+        if (key.isValid() && key.isWritable()) {
+            ByteBuffer buffer = fromClient ? conn.toClient : conn.toUpstream;
+            buffer.flip();
+            ((SocketChannel) key.channel()).write(buffer);
+            buffer.compact();
+            conn.lastActivity = System.currentTimeMillis();
+        }
+        // Pass half-closes on once everything before them has been delivered
+        if (conn.clientEof && conn.toUpstream.position() == 0 && !conn.upstreamShut) {
+            conn.upstream.shutdownOutput();
+            conn.upstreamShut = true;
+        }
+        if (conn.upstreamEof && conn.toClient.position() == 0 && !conn.clientShut) {
+            conn.client.shutdownOutput();
+            conn.clientShut = true;
+        }
+        if (conn.clientShut && conn.upstreamShut) {
+            close(conn);
+        } else {
+            updateInterest(conn);
+        }
+    }
+
+    private static void updateInterest(Connection conn) {
+        int clientOps = 0;
+        int upstreamOps = 0;
+        if (!conn.clientEof && conn.toUpstream.hasRemaining()) {
+            clientOps |= SelectionKey.OP_READ;
+        }
+        if (conn.toClient.position() > 0) {
+            clientOps |= SelectionKey.OP_WRITE;
+        }
+        if (!conn.upstreamEof && conn.toClient.hasRemaining()) {
+            upstreamOps |= SelectionKey.OP_READ;
+        }
+        if (conn.toUpstream.position() > 0) {
+            upstreamOps |= SelectionKey.OP_WRITE;
+        }
+        conn.clientKey.interestOps(clientOps);
+        conn.upstreamKey.interestOps(upstreamOps);
+    }
+
+    // Worker: plain request through the pooled clients, answered with Connection: close
+    private void forward(Connection conn, Request request, ByteBuffer rest) {
+        HttpUriRequest upstreamRequest = null;
+        boolean responded = false;
+        try {
+            conn.client.socket().setSoTimeout(config.getHeaderTimeout());
+            OutputStream out = new BufferedOutputStream(conn.client.socket().getOutputStream(), 8192);
+            InputStream in = new SequenceInputStream(new ByteArrayInputStream(rest.array(),
+                    rest.arrayOffset() + rest.position(), rest.remaining()), conn.client.socket().getInputStream());
+            upstreamRequest = toUpstreamRequest(request, in, out);
+            inFlight.add(upstreamRequest);
+            if (stopped) {
+                upstreamRequest.abort();
+            }
+            try (CloseableHttpResponse response = proxyService.forward(upstreamRequest)) {
+                responded = true;
+                writeResponse(request, response, out);
+            }
+            forwarded.incrementAndGet();
+        } catch (BadRequestException e) {
+            failed.incrementAndGet();
+            respond(conn.client, e.status, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warn("{} {} failed: {}", request.method, request.target, e.toString());
+            if (!responded) {
+                respond(conn.client, 502, "Upstream request failed");
+            }
+        } finally {
+            if (upstreamRequest != null) {
+                inFlight.remove(upstreamRequest);
+            }
+            close(conn);
+        }
+    }
+
+    private HttpUriRequest toUpstreamRequest(Request request, InputStream in, OutputStream out) throws IOException {
+        RequestBuilder builder = RequestBuilder.create(request.method).setUri(request.target);
+        Set<String> connectionTokens = request.connectionTokens();
+        for (String[] header : request.headers) {
+            String name = header[0].toLowerCase(Locale.ROOT);
+            if (!HOP_BY_HOP.contains(name) && !connectionTokens.contains(name)) {
+                builder.addHeader(header[0], header[1]);
+            }
+        }
+        String encoding = request.header("Transfer-Encoding");
+        if (encoding != null && !"identity".equalsIgnoreCase(encoding.trim())) {
+            throw new BadRequestException(411, "Chunked request bodies are not supported; send Content-Length");
+        }
+        String lengthHeader = request.header("Content-Length");
+        long length;
+        try {
+            length = lengthHeader != null ? Long.parseLong(lengthHeader.trim()) : 0;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(400, "Invalid Content-Length");
+        }
+        if (length > 0) {
+            if ("100-continue".equalsIgnoreCase(String.valueOf(request.header("Expect")).trim())) {
+                out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+            }
+            if (length <= MAX_BUFFERED_BODY) {
+                builder.setEntity(new ByteArrayEntity(readFully(in, (int) length)));
+            } else {
+                builder.setEntity(new InputStreamEntity(in, length));
+            }
+        }
+        return builder.build();
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(length);
+        byte[] chunk = new byte[Math.min(length, 8192)];
+        while (body.size() < length) {
+            int n = in.read(chunk, 0, Math.min(chunk.length, length - body.size()));
+            if (n < 0) {
+                throw new IOException("Client closed the connection before sending the request body");
+            }
+            body.write(chunk, 0, n);
+        }
+        return body.toByteArray();
+    }
+
+    private static void writeResponse(Request request, CloseableHttpResponse response, OutputStream out) throws IOException {
+        StatusLine status = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+        if (status.getStatusCode() == 407) {
+            // The client cannot answer the proxy's challenge; the daemon already tried every scheme
+            EntityStreams.consume(entity);
+            out.write(errorResponse(502, "Upstream proxy authentication failed"));
+            out.flush();
+            return;
+        }
+        StringBuilder head = new StringBuilder(512).append("HTTP/1.1 ").append(status.getStatusCode()).append(' ')
+                .append(status.getReasonPhrase() != null ? status.getReasonPhrase() : "").append("\r\n");
+        for (Header header : response.getAllHeaders()) {
+            String name = header.getName().toLowerCase(Locale.ROOT);
+            // Without an entity (HEAD, 304) the origin's Content-Length still describes the resource
+            if (!HOP_BY_HOP.contains(name) || (entity == null && name.equals("content-length"))) {
+                head.append(header.getName()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (entity != null && entity.getContentLength() >= 0) {
+            head.append("Content-Length: ").append(entity.getContentLength()).append("\r\n");
+        }
+        head.append("Connection: close\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (entity != null && !"HEAD".equalsIgnoreCase(request.method)) {
+            EntityStreams.copy(entity, out);
+        }
+        out.flush();
+    }
+
+    private void onSelector(Runnable task) {
+        pending.add(task);
+        selector.wakeup();
+        if (stopped) {
+            // The selector thread is gone; tasks only clean up once stopped
+            runPending();
+        }
+    }
+
+    private void runPending() {
+        Runnable task;
+        while ((task = pending.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Local proxy task failed: {}", e.toString(), e);
+            }
+        }
+    }
+
+    private void sweep(long now) {
+        for (Connection conn : new ArrayList<>(connections)) {
+            if (conn.head != null && now - conn.acceptedAt > config.getHeaderTimeout()) {
+                reject(conn, 408, "Request header timeout");
+            } else if (conn.upstream != null && now - conn.lastActivity > config.getIdleTimeout()) {
+                logger.debug("Closing idle tunnel");
+                close(conn);
+            }
+        }
+    }
+
+    private void reject(Connection conn, int status, String reason) {
+        respond(conn.client, status, reason);
+        close(conn);
+    }
+
+    private void respondAndClose(SocketChannel client, int status, String reason) {
+        respond(client, status, reason);
+        closeQuietly(client);
+    }
+
+    // Best effort: error responses are small enough for the socket buffer
+    private static void respond(SocketChannel client, int status, String reason) {
+        try {
+            client.write(ByteBuffer.wrap(errorResponse(status, reason)));
+        } catch (IOException | RuntimeException ignore) {
+        }
+    }
+
+    private static byte[] errorResponse(int status, String reason) {
+        String safeReason = reason == null ? "" : reason.replaceAll("[\\r\\n]", " ");
+        String body = status + " " + safeReason + "\n";
+        return ("HTTP/1.1 " + status + " " + safeReason + "\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: " + body.length() + "\r\n" +
+                "Connection: close\r\n\r\n" + body).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void close(Connection conn) {
+        if (!conn.closed.compareAndSet(false, true)) {
+            return;
+        }
+        // Only the selector thread touches the set; it owns every connection not handed to a worker
+        if (!conn.handedOff) {
+            connections.remove(conn);
+        }
+        closeQuietly(conn.client);
+        closeQuietly(conn.upstream);
+        // Tunnel buffers are only used on the selector thread, which is the one closing tunnels
+        BufferPool.shared().release(conn.toClient);
+        BufferPool.shared().release(conn.toUpstream);
+        conn.toClient = null;
+        conn.toUpstream = null;
+        open.decrementAndGet();
+    }
+
+    private static void closeQuietly(java.nio.channels.Channel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        byte[] array = buffer.array();
+        int end = buffer.position() - pattern.length;
+        outer:
+        for (int i = 0; i <= end; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (array[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalForwardingProxy{" +
+                "open=" + open.get() +
+                ", accepted=" + accepted.get() +
+                ", rejected=" + rejected.get() +
+                ", tunnels=" + tunnels.get() +
+                ", forwarded=" + forwarded.get() +
+                ", failed=" + failed.get() +
+                '}';
+    }
+
+    private static final class Connection {
+        final SocketChannel client;
+        final long acceptedAt = System.currentTimeMillis();
+        final AtomicBoolean closed = new AtomicBoolean();
+        SelectionKey clientKey;
+        // Request head being read; null once the request has been handed on
+        ByteBuffer head = ByteBuffer.allocate(MAX_HEAD);
+        SocketChannel upstream;
+        SelectionKey upstreamKey;
+        ByteBuffer toUpstream;
+        ByteBuffer toClient;
+        boolean clientEof;
+        boolean upstreamEof;
+        boolean clientShut;
+        boolean upstreamShut;
+        // Set when a worker took over the connection for a forwarded request
+        volatile boolean handedOff;
+        long lastActivity;
+
+        Connection(SocketChannel client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * Request line and headers sent by a local client.
+     */
+    private static final class Request {
+        final String method;
+        final String target;
+        final List<String[]> headers;
+
+        private Request(String method, String target, List<String[]> headers) {
+            this.method = method;
+            this.target = target;
+            this.headers = headers;
+        }
+
+        static Request parse(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/")) {
+                throw new IllegalArgumentException("Malformed request line");
+            }
+            List<String[]> headers = new ArrayList<>(lines.length);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Malformed header");
+                }
+                headers.add(new String[] {lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim()});
+            }
+            return new Request(requestLine[0], requestLine[1], headers);
+        }
+
+        String header(String name) {
+            for (String[] header : headers) {
+                if (header[0].equalsIgnoreCase(name)) {
+                    return header[1];
+                }
+            }
+            return null;
+        }
+
+        // Headers named in Connection are hop-by-hop as well
+        Set<String> connectionTokens() {
+            Set<String> tokens = new HashSet<>();
+            for (String[] header : headers) {
+                if (header[0].equalsIgnoreCase("Connection") || header[0].equalsIgnoreCase("Proxy-Connection")) {
+                    for (String token : header[1].split(",")) {
+                        tokens.add(token.trim().toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            return tokens;
+        }
+    }
+
+    private static final class BadRequestException extends IOException {
+        final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
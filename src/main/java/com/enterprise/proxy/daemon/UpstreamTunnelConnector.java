@@ -0,0 +1,473 @@
+package com.enterprise.proxy.daemon;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.service.CachingDnsResolver;
+import com.enterprise.proxy.service.ProxyAuthMode;
+import com.enterprise.proxy.service.ProxyAuthSchemeResolver;
+import com.enterprise.proxy.service.ProxyEndpointPool;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.AUTH;
+import org.apache.http.auth.AuthScheme;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.auth.ContextAwareAuthScheme;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.MalformedChallengeException;
+import org.apache.http.auth.NTCredentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.auth.NTLMScheme;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Opens authenticated CONNECT tunnels through the corporate proxy for {@link LocalForwardingProxy}.
+ * <p>
+ * A tunnel takes over its upstream connection, so each one needs its own handshake. It is done here
+ * on a blocking {@link SocketChannel} with HttpClient's NTLM and Basic schemes (the schemes that can
+ * be answered without a ticket cache); the channel is then handed to the selector. Once a scheme is
+ * known to work for the proxy (see {@link ProxyAuthSchemeResolver}), its first message goes out with
+ * the first CONNECT, saving the unauthenticated 407 round trip.
+ */
+@Component
+public class UpstreamTunnelConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamTunnelConnector.class);
+
+    private static final int MAX_HEAD = 65536;
+    // 407 legs per tunnel: NTLM needs two, plus one scheme switch
+    private static final int MAX_LEGS = 4;
+
+    private final ProxyConfig proxyConfig;
+    private final HttpClientConfig httpClientConfig;
+    private final ProxyAuthSchemeResolver authSchemeResolver;
+    private final ProxyEndpointPool endpointPool;
+    private final CachingDnsResolver dnsResolver;
+    private volatile String workstation;
+
+    @Autowired
+    public UpstreamTunnelConnector(ProxyConfig proxyConfig, HttpClientConfig httpClientConfig,
+                                   ProxyAuthSchemeResolver authSchemeResolver, ProxyEndpointPool endpointPool,
+                                   CachingDnsResolver dnsResolver) {
+        this.proxyConfig = proxyConfig;
+        this.httpClientConfig = httpClientConfig;
+        this.authSchemeResolver = authSchemeResolver;
+        this.endpointPool = endpointPool;
+        this.dnsResolver = dnsResolver;
+    }
+
+    /**
+     * Outcome of a CONNECT: an open tunnel, or the status to report to the client.
+     */
+    static final class Tunnel {
+        final SocketChannel channel;
+        // Bytes the proxy sent after its 200, to be passed on to the client first
+        final ByteBuffer leftover;
+        final int status;
+        final String reason;
+
+        private Tunnel(SocketChannel channel, ByteBuffer leftover) {
+            this.channel = channel;
+            this.leftover = leftover;
+            this.status = 200;
+            this.reason = "Connection established";
+        }
+
+        private Tunnel(int status, String reason) {
+            this.channel = null;
+            this.leftover = null;
+            this.status = status;
+            this.reason = reason;
+        }
+
+        boolean isOpen() {
+            return channel != null;
+        }
+    }
+
+    /**
+     * Opens a tunnel to host:port, authenticating to the proxy as needed. The returned channel is
+     * still in blocking mode.
+     */
+    Tunnel connect(String authority, String userAgent) throws IOException {
+        String proxyKey = proxyConfig.getHost() + ":" + proxyConfig.getPort();
+        HttpHost proxy = endpointPool.isActive() ? endpointPool.select()
+                : new HttpHost(proxyConfig.getHost(), proxyConfig.getPort());
+        Set<ProxyAuthMode> tried = EnumSet.noneOf(ProxyAuthMode.class);
+        ProxyAuthMode mode = null;
+        AuthScheme scheme = null;
+        List<ProxyAuthMode> candidates = authSchemeResolver.candidates(proxyKey);
+        if (authSchemeResolver.isResolved(proxyKey) && isSupported(candidates.get(0))) {
+            mode = candidates.get(0);
+            scheme = prime(mode);
+            tried.add(mode);
+        }
+
+        Upstream upstream = Upstream.open(proxy, dnsResolver, httpClientConfig);
+        try {
+            for (int leg = 0; leg < MAX_LEGS; leg++) {
+                upstream.writeConnect(authority, userAgent, scheme != null ? authenticate(scheme, mode, authority) : null);
+                Head head = upstream.readHead();
+                if (head.status == 200) {
+                    if (mode != null) {
+                        authSchemeResolver.recordSuccess(proxyKey, mode);
+                    }
+                    Tunnel tunnel = new Tunnel(upstream.channel, upstream.remaining());
+                    upstream = null;
+                    return tunnel;
+                }
+                if (head.status != 407) {
+                    return new Tunnel(head.status, head.reason);
+                }
+                boolean reusable = upstream.skipBody(head);
+
+                // Continue a multi-leg handshake, or move on to the next scheme the proxy offers
+                Header challenge = scheme != null && !scheme.isComplete() ? head.challenge(scheme.getSchemeName()) : null;
+                if (challenge != null) {
+                    processChallenge(scheme, challenge);
+                } else {
+                    if (mode != null) {
+                        logger.warn("Proxy rejected {} for CONNECT {}", mode, authority);
+                        authSchemeResolver.recordFailure(proxyKey, mode);
+                    }
+                    mode = nextMode(candidates, head, tried);
+                    if (mode == null) {
+                        return new Tunnel(407, "No usable proxy auth scheme in " + head.challenges());
+                    }
+                    tried.add(mode);
+                    scheme = newScheme(mode);
+                    processChallenge(scheme, head.challenge(scheme.getSchemeName()));
+                }
+                if (!reusable) {
+                    // NTLM cannot survive a reconnect mid-handshake; the next leg will tell
+                    upstream.close();
+                    upstream = Upstream.open(proxy, dnsResolver, httpClientConfig);
+                }
+            }
+            return new Tunnel(407, "Proxy authentication did not complete");
+        } finally {
+            if (upstream != null) {
+                upstream.close();
+            }
+        }
+    }
+
+    private static boolean isSupported(ProxyAuthMode mode) {
+        return mode == ProxyAuthMode.NTLM || mode == ProxyAuthMode.BASIC;
+    }
+
+    // Next untried scheme the proxy offers, in the resolver's order
+    private static ProxyAuthMode nextMode(List<ProxyAuthMode> candidates, Head head, Set<ProxyAuthMode> tried) {
+        for (ProxyAuthMode mode : candidates) {
+            if (isSupported(mode) && !tried.contains(mode) && head.challenge(schemeName(mode)) != null) {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    private static String schemeName(ProxyAuthMode mode) {
+        return mode == ProxyAuthMode.NTLM ? "ntlm" : "basic";
+    }
+
+    private static AuthScheme newScheme(ProxyAuthMode mode) {
+        return mode == ProxyAuthMode.NTLM ? new NTLMScheme() : new BasicScheme(StandardCharsets.UTF_8);
+    }
+
+    // A scheme ready to answer without a challenge, as if the proxy had sent an empty one
+    private static AuthScheme prime(ProxyAuthMode mode) throws IOException {
+        AuthScheme scheme = newScheme(mode);
+        processChallenge(scheme, new BasicHeader(AUTH.PROXY_AUTH, mode == ProxyAuthMode.NTLM ? "NTLM" : "Basic realm=\"proxy\""));
+        return scheme;
+    }
+
+    private static void processChallenge(AuthScheme scheme, Header challenge) throws IOException {
+        try {
+            scheme.processChallenge(challenge);
+        } catch (MalformedChallengeException e) {
+            throw new IOException("Malformed proxy challenge [" + challenge.getValue() + "]: " + e.getMessage(), e);
+        }
+    }
+
+    private Header authenticate(AuthScheme scheme, ProxyAuthMode mode, String authority) throws IOException {
+        try {
+            return ((ContextAwareAuthScheme) scheme).authenticate(credentials(mode),
+                    new BasicHttpRequest("CONNECT", authority, HttpVersion.HTTP_1_1), new BasicHttpContext());
+        } catch (AuthenticationException e) {
+            throw new IOException("Proxy " + mode + " authentication failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Same identities as the pooled clients in ProxyService
+    private Credentials credentials(ProxyAuthMode mode) {
+        if (mode == ProxyAuthMode.BASIC) {
+            String username = proxyConfig.getBbsAlias() != null ? proxyConfig.getBbsAlias() : proxyConfig.getUsername();
+            return new UsernamePasswordCredentials(username, proxyConfig.getPassword());
+        }
+        String qualified = proxyConfig.getDomainUsername() != null ? proxyConfig.getDomainUsername() : proxyConfig.getUsername();
+        String domain = proxyConfig.getDomain() != null ? proxyConfig.getDomain() : "";
+        if (qualified != null && qualified.contains("\\")) {
+            domain = qualified.substring(0, qualified.indexOf('\\'));
+        }
+        String username = proxyConfig.getUsername();
+        if (username != null && username.contains("\\")) {
+            username = username.substring(username.indexOf('\\') + 1);
+        }
+        return new NTCredentials(username, proxyConfig.getPassword(), workstation(), domain);
+    }
+
+    private String workstation() {
+        String name = workstation;
+        if (name == null) {
+            try {
+                name = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                name = "";
+            }
+            workstation = name;
+        }
+        return name;
+    }
+
+    /**
+     * Status line and headers of a proxy response.
+     */
+    private static final class Head {
+        final int status;
+        final String reason;
+        final boolean keepAlive;
+        final List<String[]> headers;
+
+        Head(int status, String reason, boolean http11, List<String[]> headers) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            String connection = header("Proxy-Connection") != null ? header("Proxy-Connection") : header("Connection");
+            this.keepAlive = connection != null ? !"close".equalsIgnoreCase(connection.trim()) : http11;
+        }
+
+        String header(String name) {
+            for (String[] header : headers) {
+                if (header[0].equalsIgnoreCase(name)) {
+                    return header[1];
+                }
+            }
+            return null;
+        }
+
+        // The Proxy-Authenticate header for the scheme, or null if it is not offered
+        Header challenge(String schemeName) {
+            String prefix = schemeName.toLowerCase(Locale.ROOT);
+            for (String[] header : headers) {
+                if (header[0].equalsIgnoreCase(AUTH.PROXY_AUTH)) {
+                    String value = header[1].trim();
+                    String lower = value.toLowerCase(Locale.ROOT);
+                    if (lower.equals(prefix) || lower.startsWith(prefix + " ")) {
+                        return new BasicHeader(AUTH.PROXY_AUTH, value);
+                    }
+                }
+            }
+            return null;
+        }
+
+        List<String> challenges() {
+            List<String> values = new ArrayList<>();
+            for (String[] header : headers) {
+                if (header[0].equalsIgnoreCase(AUTH.PROXY_AUTH)) {
+                    values.add(header[1].trim());
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * One connection to the proxy during the handshake, read through the socket adaptor so the
+     * socket timeout applies.
+     */
+    private static final class Upstream {
+        final SocketChannel channel;
+        private final InputStream in;
+        private final byte[] buf = new byte[MAX_HEAD];
+        private int pos;
+        private int limit;
+
+        private Upstream(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.in = channel.socket().getInputStream();
+        }
+
+        static Upstream open(HttpHost proxy, CachingDnsResolver dnsResolver, HttpClientConfig config) throws IOException {
+            IOException failure = null;
+            for (InetAddress address : dnsResolver.resolve(proxy.getHostName())) {
+                SocketChannel channel = SocketChannel.open();
+                try {
+                    channel.socket().connect(new InetSocketAddress(address, proxy.getPort()), config.getConnection().getTimeout());
+                    channel.socket().setTcpNoDelay(true);
+                    channel.socket().setSoTimeout(config.getSocketTimeout());
+                    return new Upstream(channel);
+                } catch (IOException e) {
+                    channel.close();
+                    failure = e;
+                }
+            }
+            throw failure != null ? failure : new IOException("No address for proxy " + proxy.toHostString());
+        }
+
+        void writeConnect(String authority, String userAgent, Header authorization) throws IOException {
+            StringBuilder request = new StringBuilder(256)
+                    .append("CONNECT ").append(authority).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(authority).append("\r\n")
+                    .append("Proxy-Connection: Keep-Alive\r\n");
+            if (userAgent != null) {
+                request.append("User-Agent: ").append(userAgent).append("\r\n");
+            }
+            if (authorization != null) {
+                request.append(authorization.getName()).append(": ").append(authorization.getValue()).append("\r\n");
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(request.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        Head readHead() throws IOException {
+            String statusLine = readLine();
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed proxy response [" + statusLine + "]");
+            }
+            List<String[]> headers = new ArrayList<>();
+            for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.add(new String[] {line.substring(0, colon).trim(), line.substring(colon + 1).trim()});
+                }
+            }
+            try {
+                return new Head(Integer.parseInt(parts[1]), parts.length > 2 ? parts[2] : "",
+                        !"HTTP/1.0".equals(parts[0]), headers);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed proxy response [" + statusLine + "]");
+            }
+        }
+
+        /**
+         * Skips the body of a 407; returns whether the connection can carry the next leg.
+         */
+        boolean skipBody(Head head) throws IOException {
+            if (!head.keepAlive) {
+                return false;
+            }
+            String encoding = head.header("Transfer-Encoding");
+            if (encoding != null && encoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+                for (long size = chunkSize(readLine()); size > 0; size = chunkSize(readLine())) {
+                    skip(size);
+                    readLine();
+                }
+                // Trailers
+                while (!readLine().isEmpty()) {
+                    // skip
+                }
+                return true;
+            }
+            String length = head.header("Content-Length");
+            if (length == null) {
+                // Body runs to the end of the connection
+                return false;
+            }
+            try {
+                skip(Long.parseLong(length.trim()));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+
+        ByteBuffer remaining() {
+            ByteBuffer leftover = ByteBuffer.allocate(limit - pos);
+            leftover.put(buf, pos, limit - pos).flip();
+            return leftover;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+        private static long chunkSize(String line) throws IOException {
+            int ext = line.indexOf(';');
+            try {
+                return Long.parseLong((ext >= 0 ? line.substring(0, ext) : line).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size [" + line + "]");
+            }
+        }
+
+        private String readLine() throws IOException {
+            int start = pos;
+            while (true) {
+                for (int i = start; i < limit; i++) {
+                    if (buf[i] == '\n') {
+                        int end = i > pos && buf[i - 1] == '\r' ? i - 1 : i;
+                        String line = new String(buf, pos, end - pos, StandardCharsets.ISO_8859_1);
+                        pos = i + 1;
+                        return line;
+                    }
+                }
+                start = limit - pos;
+                fill();
+            }
+        }
+
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                if (pos == limit) {
+                    fill();
+                }
+                int step = (int) Math.min(n, limit - pos);
+                pos += step;
+                n -= step;
+            }
+        }
+
+        // Moves unread bytes to the front and reads more after them
+        private void fill() throws IOException {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            if (limit == buf.length) {
+                throw new IOException("Proxy response head exceeds " + MAX_HEAD + " bytes");
+            }
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                throw new IOException("Proxy closed the connection");
+            }
+            limit += n;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.enterprise.proxy.runner;
+
+import com.enterprise.proxy.service.ProxyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches many URLs through {@link ProxyService} with bounded parallelism in one JVM,
+ * writing each result as it completes and a latency summary at the end.
+ */
+public class BatchRequestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchRequestExecutor.class);
+
+    private final ProxyService proxyService;
+    private final int parallelism;
+    private final PrintStream out;
+
+    public BatchRequestExecutor(ProxyService proxyService, int parallelism, PrintStream out) {
+        this.proxyService = proxyService;
+        this.parallelism = Math.max(1, parallelism);
+        this.out = out;
+    }
+
+    /**
+     * Reads URLs, one per line, from a file or from stdin when source is "-".
+     * Blank lines and lines starting with '#' are ignored.
+     */
+    public static List<String> readUrls(String source) throws IOException {
+        BufferedReader reader = "-".equals(source)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8);
+        List<String> urls = new ArrayList<>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    urls.add(line);
+                }
+            }
+        } finally {
+            // Leave stdin open for the rest of the JVM
+            if (!"-".equals(source)) {
+                reader.close();
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Executes all URLs and returns the number of failed requests.
+     */
+    public int execute(List<String> urls) throws InterruptedException {
+        logger.info("Batch: fetching {} URLs with parallelism {}", urls.size(), parallelism);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "batch-fetch-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<BatchResult> completionService = new ExecutorCompletionService<>(executor);
+
+        long batchStart = System.nanoTime();
+        try {
+            for (String url : urls) {
+                completionService.submit(() -> {
+                    long start = System.nanoTime();
+                    String response = proxyService.executeRequest(url);
+                    return new BatchResult(url, response, System.nanoTime() - start);
+                });
+            }
+
+            List<Long> latencies = new ArrayList<>(urls.size());
+            int failures = 0;
+            for (int i = 0; i < urls.size(); i++) {
+                BatchResult result;
+                try {
+                    result = completionService.take().get();
+                } catch (ExecutionException e) {
+                    logger.error("Batch request failed unexpectedly: {}", e.getCause().getMessage(), e.getCause());
+                    failures++;
+                    continue;
+                }
+                latencies.add(result.latencyNanos);
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+                out.println("=== " + (result.isSuccess() ? "OK" : "FAILED") + " " + result.url
+                        + " (" + result.latencyNanos / 1_000_000 + " ms) ===");
+                out.println(result.response);
+            }
+
+            printSummary(urls.size(), failures, latencies, System.nanoTime() - batchStart);
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void printSummary(int total, int failures, List<Long> latencies, long elapsedNanos) {
+        Collections.sort(latencies);
+        double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+        out.println("=== BATCH SUMMARY ===");
+        out.println(String.format("requests=%d ok=%d failed=%d elapsed=%.3fs throughput=%.2f req/s",
+                total, total - failures, failures, elapsedSeconds,
+                elapsedSeconds > 0 ? total / elapsedSeconds : 0.0));
+        out.println(String.format("latency ms: p50=%d p95=%d p99=%d max=%d",
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1) / 1_000_000));
+    }
+
+    // Nearest-rank percentile over sorted nanosecond latencies, in milliseconds
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1)) / 1_000_000;
+    }
+
+    private static class BatchResult {
+        private final String url;
+        private final String response;
+        private final long latencyNanos;
+
+        BatchResult(String url, String response, long latencyNanos) {
+            this.url = url;
+            this.response = response;
+            this.latencyNanos = latencyNanos;
+        }
+
+        boolean isSuccess() {
+            return response != null
+                    && !response.startsWith("Error: ")
+                    && !response.startsWith("Request failed with status:")
+                    && !response.contains("407 Proxy Authentication Error");
+        }
+    }
+}
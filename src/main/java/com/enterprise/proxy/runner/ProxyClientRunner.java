@@ -1,22 +1,32 @@
 package com.enterprise.proxy.runner;
 
+import com.enterprise.proxy.daemon.LocalForwardingProxy;
 import com.enterprise.proxy.service.ProxyService;
+import com.enterprise.proxy.service.RequestTimingRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 @Component
 public class ProxyClientRunner implements CommandLineRunner {
     
     private static final Logger logger = LoggerFactory.getLogger(ProxyClientRunner.class);
     
     private final ProxyService proxyService;
+    private final RequestTimingRecorder timings;
+    private final LocalForwardingProxy localProxy;
     
     @Autowired
-    public ProxyClientRunner(ProxyService proxyService) {
+    public ProxyClientRunner(ProxyService proxyService, RequestTimingRecorder timings,
+                             LocalForwardingProxy localProxy) {
         this.proxyService = proxyService;
+        this.timings = timings;
+        this.localProxy = localProxy;
     }
     
     @Override
@@ -24,22 +34,84 @@ public class ProxyClientRunner implements CommandLineRunner {
         logger.info("Starting Proxy Client Application...");
         
         String targetUrl = null;
+        String batchFile = null;
+        String outputFile = null;
+        String outputChecksum = null;
+        int batchParallelism = 8;
+        boolean daemon = false;
         
         // Check for command line arguments
         for (int i = 0; i < args.length; i++) {
             if ("--target.url".equals(args[i]) && i + 1 < args.length) {
                 targetUrl = args[i + 1];
                 logger.info("Using target URL from command line: {}", targetUrl);
-                break;
+            } else if ("--output.file".equals(args[i]) && i + 1 < args.length) {
+                outputFile = args[i + 1];
+            } else if ("--output.checksum".equals(args[i]) && i + 1 < args.length) {
+                outputChecksum = args[i + 1];
+            } else if ("--batch.file".equals(args[i]) && i + 1 < args.length) {
+                batchFile = args[i + 1];
+            } else if ("--batch.parallelism".equals(args[i]) && i + 1 < args.length) {
+                batchParallelism = Integer.parseInt(args[i + 1]);
+            } else if ("--daemon".equals(args[i])) {
+                daemon = true;
+            }
+        }
+        
+        if (daemon) {
+            // Serve other local processes until the JVM is stopped; shutdown drains open connections
+            localProxy.start();
+            localProxy.awaitTermination();
+            logger.info("Proxy Client daemon stopped.");
+            return;
+        }
+        
+        if (batchFile != null) {
+            // Batch mode: many URLs (file, or stdin with "-") in one JVM with bounded parallelism
+            logger.info("Batch mode: reading URLs from [{}]", "-".equals(batchFile) ? "stdin" : batchFile);
+            BatchRequestExecutor batch = new BatchRequestExecutor(proxyService, batchParallelism, System.out);
+            int failures = batch.execute(BatchRequestExecutor.readUrls(batchFile));
+            String timingSummary = timings.summary();
+            if (timingSummary != null) {
+                System.out.println("=== TIMING SUMMARY ===");
+                System.out.print(timingSummary);
             }
+            logger.info("Proxy Client batch completed with {} failure(s).", failures);
+            return;
         }
         
-        String response = proxyService.executeRequest(targetUrl);
+        if (outputFile != null) {
+            // Stream the body straight to disk; heap use is independent of response size
+            try {
+                long bytes = proxyService.downloadToFile(targetUrl, Paths.get(outputFile), outputChecksum);
+                logger.info("Wrote {} bytes to [{}]", bytes, outputFile);
+            } catch (IOException e) {
+                logger.error("Download to [{}] failed: {}", outputFile, e.getMessage());
+                System.out.println(e.getMessage());
+            }
+            logTimingSummary();
+            logger.info("Proxy Client Application completed successfully.");
+            return;
+        }
         
         logger.info("=== RESPONSE START ===");
-        System.out.println(response);
+        try {
+            proxyService.executeRequestToStream(targetUrl, System.out);
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
         logger.info("=== RESPONSE END ===");
         
+        logTimingSummary();
         logger.info("Proxy Client Application completed successfully.");
     }
+    
+    // Single request: the body owns stdout, so the table goes to the log
+    private void logTimingSummary() {
+        String timingSummary = timings.summary();
+        if (timingSummary != null) {
+            logger.info("Request timing:\n{}", timingSummary);
+        }
+    }
 }
\ No newline at end of file
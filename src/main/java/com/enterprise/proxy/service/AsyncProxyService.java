@@ -0,0 +1,351 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.config.TargetConfig;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthSchemeProvider;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.NTCredentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.AuthSchemes;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.impl.auth.BasicSchemeFactory;
+import org.apache.http.impl.auth.DigestSchemeFactory;
+import org.apache.http.impl.auth.NTLMSchemeFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.ProxyAuthenticationStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of {@link ProxyService#executeRequest(String)} built on HttpAsyncClient.
+ * <p>
+ * A small number of I/O dispatcher threads drive all in-flight requests, including the proxy
+ * 407 handshake. Supports NTLM and Basic proxy authentication; Kerberos needs a JAAS Subject
+ * on the calling thread and stays on the blocking path.
+ * <p>
+ * Connections go to the node {@link ProxyEndpointPool} picks and resolve through the shared
+ * {@link CachingDnsResolver}, like the blocking clients. Async connects run on the I/O reactor, out of
+ * reach of the pool's socket hooks, so they rely on the health probes (and the blocking clients) to take
+ * a failed node out, and a failed request is not retried on another node.
+ */
+@Service
+public class AsyncProxyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncProxyService.class);
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+
+    private final ProxyConfig proxyConfig;
+    private final HttpClientConfig httpClientConfig;
+    private final TargetConfig targetConfig;
+    private final ProxyAuthSchemeResolver authSchemeResolver;
+    private final ProxyAuthSessionCache authSessionCache;
+    private final ProxyTlsContext tlsContext;
+    private final ProxyMetrics metrics;
+    private final ProxyEndpointPool endpointPool;
+    private final CachingDnsResolver dnsResolver;
+
+    private final Map<ProxyAuthMode, CloseableHttpAsyncClient> clients = new EnumMap<>(ProxyAuthMode.class);
+
+    @Autowired
+    public AsyncProxyService(ProxyConfig proxyConfig, HttpClientConfig httpClientConfig, TargetConfig targetConfig,
+                             ProxyAuthSchemeResolver authSchemeResolver, ProxyAuthSessionCache authSessionCache,
+                             ProxyTlsContext tlsContext, ProxyMetrics metrics, ProxyEndpointPool endpointPool,
+                             CachingDnsResolver dnsResolver) {
+        this.proxyConfig = proxyConfig;
+        this.httpClientConfig = httpClientConfig;
+        this.targetConfig = targetConfig;
+        this.authSchemeResolver = authSchemeResolver;
+        this.authSessionCache = authSessionCache;
+        this.tlsContext = tlsContext;
+        this.metrics = metrics;
+        this.endpointPool = endpointPool;
+        this.dnsResolver = dnsResolver;
+    }
+
+    @PostConstruct
+    public void initClients() {
+        if (proxyConfig.getHost() == null || proxyConfig.getHost().trim().isEmpty()) {
+            logger.warn("Proxy host not configured; async HTTP clients will be created on first use");
+            return;
+        }
+        client(ProxyAuthMode.NTLM);
+        client(ProxyAuthMode.BASIC);
+        logger.info("Async HTTP clients started (ioThreads={})", httpClientConfig.getAsync().getIoThreads());
+    }
+
+    @PreDestroy
+    public void closeClients() {
+        synchronized (clients) {
+            for (Map.Entry<ProxyAuthMode, CloseableHttpAsyncClient> entry : clients.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    logger.warn("Error closing {} async HTTP client: {}", entry.getKey(), e.getMessage());
+                }
+            }
+            clients.clear();
+        }
+    }
+
+    /**
+     * Executes a proxied GET without blocking the caller.
+     * <p>
+     * The future completes with the same result strings as the blocking
+     * {@link ProxyService#executeRequest(String)}: the body on success, otherwise an error message.
+     */
+    public CompletableFuture<String> executeRequestAsync(String targetUrl) {
+        if (targetUrl == null || targetUrl.trim().isEmpty()) {
+            targetUrl = targetConfig.getUrl();
+        }
+        if (proxyConfig.getPassword() == null || proxyConfig.getPassword().isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    "Error: Password is not configured. Please set proxy.password in application.properties");
+        }
+
+        String proxyKey = proxyConfig.getHost() + ":" + proxyConfig.getPort();
+        List<ProxyAuthMode> candidates = authSchemeResolver.candidates(proxyKey).stream()
+                .filter(mode -> mode == ProxyAuthMode.NTLM || mode == ProxyAuthMode.BASIC)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            candidates = Arrays.asList(ProxyAuthMode.NTLM, ProxyAuthMode.BASIC);
+        }
+        return executeChain(proxyKey, candidates, 0, targetUrl, null, metrics.startTimer());
+    }
+
+    private CompletableFuture<String> executeChain(String proxyKey, List<ProxyAuthMode> candidates, int index,
+                                                   String targetUrl, String previousResult,
+                                                   Timer.Sample requestSample) {
+        if (index >= candidates.size()) {
+            metrics.recordRequest(index > 0 ? candidates.get(index - 1) : null,
+                    previousResult != null ? ProxyMetrics.outcome(previousResult) : ProxyMetrics.OUTCOME_ERROR,
+                    requestSample);
+            return CompletableFuture.completedFuture(previousResult);
+        }
+        ProxyAuthMode mode = candidates.get(index);
+        Timer.Sample attemptSample = metrics.startTimer();
+        return executeWith(mode, targetUrl).thenCompose(result -> {
+            String outcome = ProxyMetrics.outcome(result);
+            metrics.recordAttempt(mode, outcome, attemptSample);
+            if (!ProxyMetrics.OUTCOME_REJECTED.equals(outcome)) {
+                if (!ProxyMetrics.OUTCOME_ERROR.equals(outcome)) {
+                    authSchemeResolver.recordSuccess(proxyKey, mode);
+                }
+                metrics.recordRequest(mode, outcome, requestSample);
+                return CompletableFuture.completedFuture(result);
+            }
+            authSchemeResolver.recordFailure(proxyKey, mode);
+            if (index + 1 < candidates.size()) {
+                logger.warn("Async {} failed, trying {}...", mode, candidates.get(index + 1));
+                metrics.recordFallback(mode, candidates.get(index + 1));
+            }
+            return executeChain(proxyKey, candidates, index + 1, targetUrl, result, requestSample);
+        });
+    }
+
+    private CompletableFuture<String> executeWith(ProxyAuthMode mode, String targetUrl) {
+        HttpGet request = new HttpGet(targetUrl);
+        request.setHeader("User-Agent", USER_AGENT);
+
+        String session = mode + ":" + proxyConfig.getUsername() + "@" + proxyConfig.getHost() + ":" + proxyConfig.getPort();
+        HttpClientContext context = authSessionCache.newContext(session);
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        logger.debug("Executing async request with {} authentication: {}", mode, targetUrl);
+        Future<HttpResponse> pending = client(mode).execute(request, context, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                authSessionCache.onResponse(session, context, statusCode);
+                try {
+                    if (statusCode == 407) {
+                        logger.error("Async {} request got 407; {}", mode, ProxyService.minimalAuthInfo(response));
+                        EntityStreams.consume(response.getEntity());
+                        result.complete("407 Proxy Authentication Error. Check logs for details.");
+                    } else if (statusCode >= 200 && statusCode < 300) {
+                        // The async consumer has already buffered the entity, so this does not block
+                        result.complete(response.getEntity() != null
+                                ? EntityStreams.toString(metrics.countReceived(response.getEntity(), mode)) : "");
+                    } else {
+                        String msg = ProxyService.minimalFailureMessage(response, statusCode);
+                        EntityStreams.consume(response.getEntity());
+                        logger.warn("Async {} request failed: {}", mode, msg);
+                        result.complete(msg);
+                    }
+                } catch (IOException e) {
+                    result.complete("Error: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                logger.error("Error executing async {} request: {}", mode, ex.getMessage());
+                result.complete("Error: " + ex.getMessage());
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+
+        // Cancelling the returned future aborts the exchange and releases the connection
+        result.whenComplete((body, ex) -> {
+            if (result.isCancelled()) {
+                pending.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private CloseableHttpAsyncClient client(ProxyAuthMode mode) {
+        synchronized (clients) {
+            CloseableHttpAsyncClient client = clients.get(mode);
+            if (client == null) {
+                client = createAsyncClient(mode);
+                client.start();
+                clients.put(mode, client);
+            }
+            return client;
+        }
+    }
+
+    private CloseableHttpAsyncClient createAsyncClient(ProxyAuthMode mode) {
+        String proxyHost = proxyConfig.getHost();
+        int proxyPort = proxyConfig.getPort();
+        String password = proxyConfig.getPassword();
+
+        HttpHost proxy = new HttpHost(proxyHost, proxyPort);
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        List<String> preferredSchemes;
+
+        if (mode == ProxyAuthMode.BASIC) {
+            String username = proxyConfig.getBbsAlias() != null ? proxyConfig.getBbsAlias() : proxyConfig.getUsername();
+            setProxyCredentials(credentialsProvider, new UsernamePasswordCredentials(username, password));
+            preferredSchemes = Arrays.asList(AuthSchemes.BASIC, AuthSchemes.DIGEST);
+            logger.info("Async Basic credentials created - Username: [{}]", username);
+        } else {
+            String username = proxyConfig.getDomainUsername() != null ? proxyConfig.getDomainUsername() : proxyConfig.getUsername();
+            String actualUsername = username;
+            String actualDomain = proxyConfig.getDomain() != null ? proxyConfig.getDomain() : "";
+            if (username != null && username.contains("\\")) {
+                String[] parts = username.split("\\\\", 2);
+                actualDomain = parts[0];
+                actualUsername = parts[1];
+            }
+            String workstation;
+            try {
+                workstation = java.net.InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                workstation = "";
+            }
+            setProxyCredentials(credentialsProvider, new NTCredentials(actualUsername, password, workstation, actualDomain));
+            preferredSchemes = Arrays.asList(AuthSchemes.NTLM, AuthSchemes.BASIC);
+            logger.info("Async NTLM credentials created - Domain: [{}], Username: [{}], Workstation: [{}]",
+                    actualDomain, actualUsername, workstation);
+        }
+
+        RequestConfig config = RequestConfig.custom()
+                .setProxy(proxy)
+                .setConnectTimeout(30000)
+                .setSocketTimeout(30000)
+                .setProxyPreferredAuthSchemes(preferredSchemes)
+                .setAuthenticationEnabled(true)
+                .build();
+
+        Registry<AuthSchemeProvider> authRegistry = RegistryBuilder.<AuthSchemeProvider>create()
+                .register(AuthSchemes.NTLM, new NTLMSchemeFactory())
+                .register(AuthSchemes.BASIC, new BasicSchemeFactory())
+                .register(AuthSchemes.DIGEST, new DigestSchemeFactory())
+                .build();
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(httpClientConfig.getAsync().getIoThreads())
+                .setConnectTimeout(30000)
+                .setSoTimeout(30000)
+                .build();
+
+        long defaultKeepAlive = httpClientConfig.getPool().getKeepAlive();
+        // Daemon threads so an idle async engine never keeps the one-shot CLI JVM alive
+        AtomicInteger threadIndex = new AtomicInteger();
+        DefaultConnectingIOReactor ioReactor;
+        try {
+            ioReactor = new DefaultConnectingIOReactor(ioReactorConfig, r -> {
+                Thread t = new Thread(r, "async-" + mode.name().toLowerCase() + "-io-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Cannot start the async I/O reactor", e);
+        }
+        // Shared TLS context, so async connections resume sessions from the same cache
+        Registry<SchemeIOSessionStrategy> sessionStrategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", tlsContext.newIOSessionStrategy())
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                ioReactor, null, sessionStrategies, dnsResolver);
+        connectionManager.setMaxTotal(httpClientConfig.getPool().getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(httpClientConfig.getPool().getMaxPerRoute());
+
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+                })
+                .setDefaultAuthSchemeRegistry(authRegistry)
+                .setDefaultCredentialsProvider(credentialsProvider)
+                .setDefaultRequestConfig(config)
+                .setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
+
+        HttpRoutePlanner routePlanner = endpointPool.routePlanner();
+        if (routePlanner != null) {
+            builder.setRoutePlanner(routePlanner);
+        }
+        return builder.build();
+    }
+
+    // The same credentials are valid on every proxy node
+    private void setProxyCredentials(CredentialsProvider credentialsProvider, Credentials credentials) {
+        for (HttpHost endpoint : endpointPool.endpoints()) {
+            credentialsProvider.setCredentials(new AuthScope(endpoint.getHostName(), endpoint.getPort()), credentials);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.enterprise.proxy.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of heap and direct {@link ByteBuffer}s for the I/O helpers, so steady-state reads
+ * don't allocate a new buffer per call.
+ * <p>
+ * Sizes are rounded up to a power-of-two size class from 4 KB to 1 MB; larger requests are allocated
+ * and dropped as before. Each class is split into stripes picked by thread, so concurrent callers
+ * rarely share a lock. A stripe keeps at most 256 KB (and at least one buffer) per class; buffers
+ * released to a full stripe are left to the GC. Heap buffers always have a backing array.
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 20;
+    private static final int STRIPE_CLASS_BYTES = 256 * 1024;
+
+    private static final BufferPool SHARED = new BufferPool(Runtime.getRuntime().availableProcessors());
+
+    // [direct ? 1 : 0][size class][stripe]
+    private final ArrayDeque<ByteBuffer>[][][] free;
+    private final int stripeMask;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    BufferPool(int concurrency) {
+        int stripes = Integer.highestOneBit(Math.max(1, Math.min(concurrency, 16)) * 2 - 1);
+        this.stripeMask = stripes - 1;
+        this.free = new ArrayDeque[2][MAX_SHIFT - MIN_SHIFT + 1][stripes];
+        for (ArrayDeque<ByteBuffer>[][] kind : free) {
+            for (ArrayDeque<ByteBuffer>[] sizeClass : kind) {
+                for (int i = 0; i < stripes; i++) {
+                    sizeClass[i] = new ArrayDeque<>();
+                }
+            }
+        }
+    }
+
+    /**
+     * Pool shared by the entity and file helpers.
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cleared heap buffer with at least {@code size} bytes of capacity and its limit at
+     * {@code size}. Hand it back with {@link #release} when done.
+     */
+    public ByteBuffer acquire(int size) {
+        return acquire(size, false);
+    }
+
+    /**
+     * As {@link #acquire(int)}, for a direct buffer.
+     */
+    public ByteBuffer acquireDirect(int size) {
+        return acquire(size, true);
+    }
+
+    private ByteBuffer acquire(int size, boolean direct) {
+        outstanding.incrementAndGet();
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            ArrayDeque<ByteBuffer> stripe = stripe(direct, sizeClass);
+            synchronized (stripe) {
+                buffer = stripe.pollFirst();
+            }
+        }
+        if (buffer != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            int capacity = sizeClass >= 0 ? 1 << (sizeClass + MIN_SHIFT) : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer from {@link #acquire} or {@link #acquireDirect}; it must not be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        outstanding.decrementAndGet();
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass < 0 || 1 << (sizeClass + MIN_SHIFT) != capacity) {
+            return;
+        }
+        buffer.clear();
+        ArrayDeque<ByteBuffer> stripe = stripe(buffer.isDirect(), sizeClass);
+        synchronized (stripe) {
+            if (stripe.size() < Math.max(1, STRIPE_CLASS_BYTES / capacity)) {
+                stripe.addFirst(buffer);
+                return;
+            }
+        }
+        dropped.incrementAndGet();
+    }
+
+    private ArrayDeque<ByteBuffer> stripe(boolean direct, int sizeClass) {
+        return free[direct ? 1 : 0][sizeClass][(int) Thread.currentThread().getId() & stripeMask];
+    }
+
+    // Index of the smallest class that fits, or -1 above the largest
+    private static int sizeClass(int size) {
+        if (size > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Buffers acquired and not yet released.
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        long total = hits.get() + misses.get();
+        return String.format("hits=%d, misses=%d (%.1f%% hit rate), outstanding=%d, dropped=%d",
+                hits.get(), misses.get(), total == 0 ? 0.0 : 100.0 * hits.get() / total, outstanding.get(),
+                dropped.get());
+    }
+}
@@ -0,0 +1,210 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DNS resolver for the pooled HTTP clients that keeps lookups off the connection path.
+ * <p>
+ * Results are cached for {@code http.client.dns.ttl} (the JDK does not expose record TTLs) and,
+ * while a host is in use, refreshed in the background {@code refresh-ahead} before they expire.
+ * Each call returns all A records, rotated by one, so new connections are spread across them and
+ * the connection operator still fails over to the next address when one is down. If a refresh or
+ * lookup fails, the last known addresses are kept; hosts that never resolved are negatively cached
+ * for {@code negative-ttl}.
+ */
+@Component
+public class CachingDnsResolver implements DnsResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    private final HttpClientConfig.Dns config;
+    private final DnsResolver delegate;
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Autowired
+    public CachingDnsResolver(HttpClientConfig httpClientConfig) {
+        this(httpClientConfig, SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    CachingDnsResolver(HttpClientConfig httpClientConfig, DnsResolver delegate) {
+        this.config = httpClientConfig.getDns();
+        this.delegate = delegate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dns-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        if (!config.isEnabled()) {
+            return delegate.resolve(host);
+        }
+        String key = host.toLowerCase(Locale.ROOT);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.isFresh()) {
+            hits.incrementAndGet();
+            return entry.next();
+        }
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            // Another caller may have resolved the host while we waited
+            entry = cache.get(key);
+            if (entry != null && entry.isFresh()) {
+                hits.incrementAndGet();
+                return entry.next();
+            }
+            return load(key, host, entry).next();
+        }
+    }
+
+    private Entry load(String key, String host, Entry previous) throws UnknownHostException {
+        lookups.incrementAndGet();
+        try {
+            Entry loaded = new Entry(delegate.resolve(host), config.getTtl(), previous);
+            cache.put(key, loaded);
+            scheduleRefresh(key, host, loaded);
+            logger.debug("Resolved [{}] to {}", host, Arrays.toString(loaded.addresses));
+            return loaded;
+        } catch (UnknownHostException e) {
+            failures.incrementAndGet();
+            if (previous != null && previous.addresses != null) {
+                logger.warn("DNS lookup for [{}] failed ({}); keeping {}", host, e.getMessage(),
+                        Arrays.toString(previous.addresses));
+                Entry stale = new Entry(previous.addresses, config.getNegativeTtl(), previous);
+                cache.put(key, stale);
+                return stale;
+            }
+            cache.put(key, new Entry(e, config.getNegativeTtl()));
+            throw e;
+        }
+    }
+
+    private void scheduleRefresh(String key, String host, Entry entry) {
+        long delay = Math.max(0, config.getTtl() - config.getRefreshAhead());
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        scheduler.schedule(() -> refresh(key, host, entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs on the refresh thread; hosts not used since the last lookup are left to expire
+    private void refresh(String key, String host, Entry entry) {
+        if (cache.get(key) != entry || !entry.usedSinceLoad()) {
+            return;
+        }
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            if (cache.get(key) != entry) {
+                return;
+            }
+            try {
+                load(key, host, entry);
+                refreshes.incrementAndGet();
+            } catch (UnknownHostException e) {
+                logger.warn("DNS refresh for [{}] failed: {}", host, e.getMessage());
+            } catch (RuntimeException e) {
+                logger.warn("DNS refresh for [{}] failed: {}", host, e.toString());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingDnsResolver{" +
+                "enabled=" + config.isEnabled() +
+                ", hosts=" + cache.size() +
+                ", hits=" + hits.get() +
+                ", lookups=" + lookups.get() +
+                ", refreshes=" + refreshes.get() +
+                ", failures=" + failures.get() +
+                '}';
+    }
+
+    private static final class Entry {
+        private final InetAddress[] addresses;
+        private final UnknownHostException failure;
+        private final long loadedAt = System.currentTimeMillis();
+        private final long expiresAt;
+        // Shared across refreshes so the rotation continues where it left off
+        private final AtomicInteger rotation;
+        private volatile long lastUsed;
+
+        Entry(InetAddress[] addresses, long ttl, Entry previous) {
+            this.addresses = addresses;
+            this.failure = null;
+            this.expiresAt = loadedAt + ttl;
+            this.rotation = previous != null ? previous.rotation : new AtomicInteger();
+        }
+
+        Entry(UnknownHostException failure, long ttl) {
+            this.addresses = null;
+            this.failure = failure;
+            this.expiresAt = loadedAt + ttl;
+            this.rotation = new AtomicInteger();
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+
+        boolean usedSinceLoad() {
+            return lastUsed >= loadedAt;
+        }
+
+        InetAddress[] next() throws UnknownHostException {
+            lastUsed = System.currentTimeMillis();
+            if (addresses == null) {
+                throw new UnknownHostException(failure.getMessage());
+            }
+            int n = addresses.length;
+            if (n <= 1) {
+                return addresses.clone();
+            }
+            int start = Math.floorMod(rotation.getAndIncrement(), n);
+            InetAddress[] rotated = new InetAddress[n];
+            for (int i = 0; i < n; i++) {
+                rotated[i] = addresses[(start + i) % n];
+            }
+            return rotated;
+        }
+    }
+}
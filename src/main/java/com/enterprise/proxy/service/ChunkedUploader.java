@@ -0,0 +1,287 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads a large file as fixed-size chunks, several in parallel over a shared pooled client,
+ * recording finished chunks in a checkpoint file so an interrupted upload can resume.
+ * <p>
+ * Wire protocol: every chunk is POSTed to the endpoint with {@code Upload-Id},
+ * {@code Content-Range: bytes start-end/total} and {@code Upload-File-Name} headers.
+ * Once all chunks are accepted, an empty POST with {@code Upload-Complete: <chunkCount>}
+ * asks the endpoint to assemble the file. Any 2xx response counts as accepted.
+ * <p>
+ * When a chunk fails for good, the other chunks are abandoned: requests in flight are aborted and
+ * the upload only returns once every worker has stopped, so a rerun never competes with them.
+ */
+public class ChunkedUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploader.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final CloseableHttpClient httpClient;
+    private final String endpoint;
+    private final OAuthTokenProvider tokenProvider;
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * @param httpClient    shared pooled client; its pool should allow {@code parallelism} connections per route
+     * @param endpoint      upload endpoint
+     * @param tokenProvider bearer token source, or null for unauthenticated endpoints
+     */
+    public ChunkedUploader(CloseableHttpClient httpClient, String endpoint, OAuthTokenProvider tokenProvider,
+                           int chunkSize, int parallelism) {
+        this.httpClient = httpClient;
+        this.endpoint = endpoint;
+        this.tokenProvider = tokenProvider;
+        this.chunkSize = chunkSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Uploads the file, resuming from its checkpoint if one matches, and returns the
+     * response body of the completion request. The checkpoint is deleted on success.
+     */
+    public String upload(Path file, ContentType contentType) throws IOException, InterruptedException {
+        long size = Files.size(file);
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+        Path checkpointFile = file.resolveSibling(file.getFileName() + ".upload-checkpoint");
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile, file, size, chunkSize);
+        int alreadyDone = checkpoint.completed.cardinality();
+        if (alreadyDone > 0) {
+            logger.info("Resuming upload {} of [{}]: {}/{} chunks already uploaded",
+                    checkpoint.uploadId, file, alreadyDone, chunkCount);
+        }
+
+        Queue<HttpPost> inFlight = new ConcurrentLinkedQueue<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "chunk-upload-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int index = 0; index < chunkCount; index++) {
+                if (checkpoint.completed.get(index)) {
+                    continue;
+                }
+                int chunk = index;
+                pending.add(executor.submit(() -> {
+                    uploadChunk(file, checkpoint.uploadId, chunk, size, contentType, inFlight, abandoned);
+                    if (!abandoned.get()) {
+                        checkpoint.markCompleted(chunk);
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                // Remaining chunks keep their checkpoint state; a rerun resumes from here once the
+                // workers are gone. Blocking writes don't notice an interrupt; aborting closes their connections.
+                abandoned.set(true);
+                pending.forEach(future -> future.cancel(true));
+                inFlight.forEach(HttpPost::abort);
+                executor.shutdownNow();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                if (e instanceof InterruptedException) {
+                    throw (InterruptedException) e;
+                }
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String result = complete(file, checkpoint.uploadId, chunkCount);
+        Files.deleteIfExists(checkpointFile);
+        logger.info("Upload {} of [{}] completed ({} bytes, {} chunks)", checkpoint.uploadId, file, size, chunkCount);
+        return result;
+    }
+
+    private void uploadChunk(Path file, String uploadId, int index, long total, ContentType contentType,
+                             Queue<HttpPost> inFlight, AtomicBoolean abandoned) throws IOException {
+        long start = (long) index * chunkSize;
+        long length = Math.min(chunkSize, total - start);
+        IOException last = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            HttpPost post = newRequest(file, uploadId);
+            post.setHeader("Content-Range", "bytes " + start + "-" + (start + length - 1) + "/" + total);
+            post.setEntity(new FileRegionEntity(file, start, length, contentType));
+            int statusCode;
+            inFlight.add(post);
+            // Checked after registering, so the abort sweep either sees the request or this sees the flag
+            if (abandoned.get()) {
+                inFlight.remove(post);
+                throw new IOException("Upload abandoned after another chunk failed");
+            }
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                statusCode = response.getStatusLine().getStatusCode();
+                EntityStreams.consume(response.getEntity());
+            } catch (IOException e) {
+                last = e;
+                statusCode = -1;
+            } finally {
+                inFlight.remove(post);
+            }
+            if (statusCode >= 200 && statusCode < 300) {
+                logger.debug("Chunk {} of upload {} accepted ({} bytes)", index, uploadId, length);
+                return;
+            }
+            if (statusCode > 0) {
+                last = new IOException("Chunk " + index + " rejected with status: " + statusCode);
+                // Client errors other than timeout/throttling will not succeed on retry
+                if (statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429) {
+                    throw last;
+                }
+            }
+            if (abandoned.get()) {
+                throw last;
+            }
+            if (attempt < MAX_ATTEMPTS) {
+                logger.warn("Chunk {} attempt {} failed: {}; retrying", index, attempt, last.getMessage());
+                sleepBackoff(attempt);
+            }
+        }
+        throw last;
+    }
+
+    private String complete(Path file, String uploadId, int chunkCount) throws IOException {
+        HttpPost post = newRequest(file, uploadId);
+        post.setHeader("Upload-Complete", String.valueOf(chunkCount));
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String body = response.getEntity() != null ? EntityStreams.toString(response.getEntity(), StandardCharsets.UTF_8) : "";
+            if (statusCode < 200 || statusCode >= 300) {
+                throw new IOException("Upload completion failed with status: " + statusCode + ", body=" + body);
+            }
+            return body;
+        }
+    }
+
+    private HttpPost newRequest(Path file, String uploadId) throws IOException {
+        HttpPost post = new HttpPost(endpoint);
+        post.setHeader("Upload-Id", uploadId);
+        post.setHeader("Upload-File-Name", file.getFileName().toString());
+        if (tokenProvider != null) {
+            // Fetched per request so long uploads pick up refreshed tokens
+            post.setHeader("Authorization", "Bearer " + tokenProvider.getAccessToken());
+        }
+        return post;
+    }
+
+    private static void sleepBackoff(int attempt) throws IOException {
+        try {
+            Thread.sleep(500L << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during retry backoff", e);
+        }
+    }
+
+    /**
+     * Upload progress persisted next to the source file as a properties file.
+     */
+    private static class Checkpoint {
+        private final Path path;
+        private final Properties properties;
+        private final String uploadId;
+        private final BitSet completed;
+
+        private Checkpoint(Path path, Properties properties, String uploadId, BitSet completed) {
+            this.path = path;
+            this.properties = properties;
+            this.uploadId = uploadId;
+            this.completed = completed;
+        }
+
+        static Checkpoint load(Path path, Path file, long size, int chunkSize) throws IOException {
+            String lastModified = String.valueOf(Files.getLastModifiedTime(file).toMillis());
+            if (Files.exists(path)) {
+                Properties saved = new Properties();
+                try (InputStream in = Files.newInputStream(path)) {
+                    saved.load(in);
+                }
+                // Only resume if the file and chunking are unchanged since the checkpoint was written
+                if (String.valueOf(size).equals(saved.getProperty("size"))
+                        && lastModified.equals(saved.getProperty("lastModified"))
+                        && String.valueOf(chunkSize).equals(saved.getProperty("chunkSize"))
+                        && saved.getProperty("uploadId") != null) {
+                    BitSet completed = new BitSet();
+                    for (String index : saved.getProperty("completed", "").split(",")) {
+                        if (!index.isEmpty()) {
+                            completed.set(Integer.parseInt(index));
+                        }
+                    }
+                    return new Checkpoint(path, saved, saved.getProperty("uploadId"), completed);
+                }
+                logger.info("Ignoring stale upload checkpoint [{}]", path);
+            }
+            Properties fresh = new Properties();
+            fresh.setProperty("uploadId", UUID.randomUUID().toString());
+            fresh.setProperty("size", String.valueOf(size));
+            fresh.setProperty("lastModified", lastModified);
+            fresh.setProperty("chunkSize", String.valueOf(chunkSize));
+            fresh.setProperty("completed", "");
+            Checkpoint checkpoint = new Checkpoint(path, fresh, fresh.getProperty("uploadId"), new BitSet());
+            checkpoint.save();
+            return checkpoint;
+        }
+
+        synchronized void markCompleted(int index) throws IOException {
+            completed.set(index);
+            StringBuilder sb = new StringBuilder();
+            for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(i);
+            }
+            properties.setProperty("completed", sb.toString());
+            save();
+        }
+
+        private void save() throws IOException {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "Chunked upload checkpoint");
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
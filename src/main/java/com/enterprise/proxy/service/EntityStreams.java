@@ -0,0 +1,167 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.protocol.HTTP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Reads response entities through buffers from the {@link BufferPool}, so heap use does not depend
+ * on the size of the response and steady-state reads don't allocate buffers. Replaces
+ * {@code EntityUtils.toString}/{@code consume}, which allocate new buffers on every call.
+ */
+public final class EntityStreams {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final BufferPool pool = BufferPool.shared();
+
+    private EntityStreams() {
+    }
+
+    /**
+     * Writes the entity content to the stream and returns the number of bytes written.
+     * Closing the content stream releases the connection back to the pool.
+     */
+    public static long copy(HttpEntity entity, OutputStream out) throws IOException {
+        if (entity == null) {
+            return 0;
+        }
+        ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+        long total = 0;
+        try (InputStream in = entity.getContent()) {
+            byte[] array = buffer.array();
+            int n;
+            while ((n = in.read(array, 0, BUFFER_SIZE)) != -1) {
+                out.write(array, 0, n);
+                total += n;
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        out.flush();
+        return total;
+    }
+
+    /**
+     * Writes the entity content to the channel and returns the number of bytes written.
+     */
+    public static long copy(HttpEntity entity, WritableByteChannel channel) throws IOException {
+        if (entity == null) {
+            return 0;
+        }
+        ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+        long total = 0;
+        try (InputStream in = entity.getContent()) {
+            byte[] array = buffer.array();
+            int n;
+            while ((n = in.read(array, 0, BUFFER_SIZE)) != -1) {
+                buffer.clear();
+                buffer.limit(n);
+                while (buffer.hasRemaining()) {
+                    total += channel.write(buffer);
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        return total;
+    }
+
+    /**
+     * Reads the entity content as a String, with the charset rules of {@code EntityUtils.toString}:
+     * the Content-Type charset, else the default of its MIME type, else ISO-8859-1.
+     */
+    public static String toString(HttpEntity entity) throws IOException {
+        return toString(entity, null);
+    }
+
+    /**
+     * As {@link #toString(HttpEntity)}, with {@code defaultCharset} when the Content-Type has none.
+     */
+    public static String toString(HttpEntity entity, Charset defaultCharset) throws IOException {
+        if (entity == null) {
+            throw new IllegalArgumentException("Entity may not be null");
+        }
+        ContentType contentType;
+        try {
+            contentType = ContentType.get(entity);
+        } catch (UnsupportedCharsetException e) {
+            if (defaultCharset == null) {
+                throw new UnsupportedEncodingException(e.getMessage());
+            }
+            contentType = null;
+        }
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        if (charset == null) {
+            charset = defaultCharset;
+        }
+        if (charset == null && contentType != null) {
+            ContentType mimeDefault = ContentType.getByMimeType(contentType.getMimeType());
+            charset = mimeDefault != null ? mimeDefault.getCharset() : null;
+        }
+        if (charset == null) {
+            charset = HTTP.DEF_CONTENT_CHARSET;
+        }
+
+        InputStream content = entity.getContent();
+        if (content == null) {
+            return null;
+        }
+        long length = entity.getContentLength();
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("HTTP entity too large to be buffered in memory");
+        }
+        // Sized to the body when its length is known; grows through the size classes otherwise
+        ByteBuffer buffer = pool.acquire(length >= 0 ? Math.max((int) length, 1) : BUFFER_SIZE);
+        try (InputStream in = content) {
+            int count = 0;
+            while (length < 0 || count < length) {
+                if (count == buffer.capacity()) {
+                    ByteBuffer larger = pool.acquire(buffer.capacity() * 2);
+                    System.arraycopy(buffer.array(), 0, larger.array(), 0, count);
+                    pool.release(buffer);
+                    buffer = larger;
+                }
+                int n = in.read(buffer.array(), count, buffer.capacity() - count);
+                if (n == -1) {
+                    break;
+                }
+                count += n;
+            }
+            return new String(buffer.array(), 0, count, charset);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads the rest of a streamed entity and closes it, which returns its connection to the pool.
+     */
+    public static void consume(HttpEntity entity) throws IOException {
+        if (entity == null || !entity.isStreaming()) {
+            return;
+        }
+        InputStream content = entity.getContent();
+        if (content == null) {
+            return;
+        }
+        ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+        try (InputStream in = content) {
+            byte[] array = buffer.array();
+            while (in.read(array, 0, BUFFER_SIZE) != -1) {
+                // discard
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+}
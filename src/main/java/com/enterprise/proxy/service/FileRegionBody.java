@@ -0,0 +1,45 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Multipart part for a file, written the way {@link FileRegionEntity} writes it instead of
+ * through the heap buffer of {@code FileBody}.
+ */
+public class FileRegionBody extends AbstractContentBody {
+
+    private final FileRegionEntity region;
+    private final String filename;
+
+    public FileRegionBody(Path file, ContentType contentType, String filename) throws IOException {
+        super(contentType);
+        this.region = new FileRegionEntity(file, contentType);
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        region.writeTo(out);
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return MIME.ENC_BINARY;
+    }
+
+    @Override
+    public long getContentLength() {
+        return region.getContentLength();
+    }
+}
@@ -0,0 +1,212 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.io.ContentLengthOutputStream;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Repeatable entity for a byte range of a file, streamed through a fixed-size pooled buffer so a
+ * chunk is never held in memory as a whole.
+ * <p>
+ * Sent with a Content-Length by a client built with {@link #socketFactory()} and
+ * {@link #requestExecutor()} over a plain hop, the region skips the buffer and goes straight from
+ * the page cache to the socket with {@link FileChannel#transferTo}. Chunked bodies, TLS (where the
+ * cipher needs the bytes) and any other stream go through the buffer.
+ */
+public class FileRegionEntity extends AbstractHttpEntity {
+
+    // Connection the current thread is sending a request on, see requestExecutor()
+    private static final ThreadLocal<HttpClientConnection> SENDING = new ThreadLocal<>();
+
+    private final Path file;
+    private final long position;
+    private final long length;
+
+    public FileRegionEntity(Path file, long position, long length, ContentType contentType) {
+        this.file = file;
+        this.position = position;
+        this.length = length;
+        if (contentType != null) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    /**
+     * Entity for the whole file.
+     */
+    public FileRegionEntity(Path file, ContentType contentType) throws IOException {
+        this(file, 0, Files.size(file), contentType);
+    }
+
+    /**
+     * Plain sockets backed by a {@link SocketChannel}, which {@link #writeTo} can transfer the file to.
+     */
+    static ConnectionSocketFactory socketFactory() {
+        return new PlainConnectionSocketFactory() {
+            @Override
+            public Socket createSocket(HttpContext context) throws IOException {
+                return SocketChannel.open().socket();
+            }
+        };
+    }
+
+    /**
+     * Request executor that lets {@link #writeTo} see the connection the body is written to.
+     */
+    static HttpRequestExecutor requestExecutor() {
+        return new HttpRequestExecutor() {
+            @Override
+            protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                    throws IOException, HttpException {
+                SENDING.set(conn);
+                try {
+                    return super.doSendRequest(request, conn, context);
+                } finally {
+                    SENDING.remove();
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(position);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Only a Content-Length body can skip the stream; a chunked one needs the framing it adds
+            SocketChannel socketChannel = out instanceof ContentLengthOutputStream ? sendingChannel() : null;
+            if (socketChannel != null) {
+                // The request head is still in the connection's buffer
+                out.flush();
+                transfer(channel, socketChannel);
+            } else {
+                writeBuffered(channel, out);
+            }
+        }
+    }
+
+    // Channel of the plain socket this thread is sending on; null for TLS and unknown streams
+    private static SocketChannel sendingChannel() {
+        HttpClientConnection conn = SENDING.get();
+        if (!(conn instanceof ManagedHttpClientConnection)) {
+            return null;
+        }
+        Socket socket = ((ManagedHttpClientConnection) conn).getSocket();
+        return socket == null || socket instanceof SSLSocket ? null : socket.getChannel();
+    }
+
+    private void transfer(FileChannel channel, SocketChannel target) throws IOException {
+        long offset = position;
+        long remaining = length;
+        while (remaining > 0) {
+            long n = channel.transferTo(offset, remaining, target);
+            if (n <= 0 && offset >= channel.size()) {
+                throw new IOException("Unexpected end of file " + file + " at " + offset);
+            }
+            offset += n;
+            remaining -= n;
+        }
+    }
+
+    private void writeBuffered(FileChannel channel, OutputStream out) throws IOException {
+        ByteBuffer buffer = BufferPool.shared().acquire(EntityStreams.BUFFER_SIZE);
+        try {
+            long offset = position;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(EntityStreams.BUFFER_SIZE, remaining));
+                int n = channel.read(buffer, offset);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of file " + file + " at " + offset);
+                }
+                out.write(buffer.array(), 0, n);
+                offset += n;
+                remaining -= n;
+            }
+        } finally {
+            BufferPool.shared().release(buffer);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
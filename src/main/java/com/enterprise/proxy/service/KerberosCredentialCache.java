@@ -0,0 +1,259 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.ProxyConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.security.auth.RefreshFailedException;
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.AppConfigurationEntry.LoginModuleControlFlag;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the Kerberos Subject logged in with the configured proxy credentials for the SPNEGO path.
+ * <p>
+ * The Subject holds the TGT, so requests run under {@code Subject.doAs} without an AS exchange
+ * with the KDC. Before the TGT expires it is renewed in the background; only if renewal is not
+ * possible or fails is a new login performed. A failed login is not retried for
+ * {@code proxy.kerberos.retry-interval}, so an unreachable KDC is not hit on every request.
+ */
+@Component
+public class KerberosCredentialCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(KerberosCredentialCache.class);
+
+    private final ProxyConfig proxyConfig;
+    private final ScheduledExecutorService scheduler;
+
+    private LoginContext loginContext;
+    private volatile Subject subject;
+    private volatile long ticketEndTime;
+    private long lastLoginFailure;
+    private LoginException lastLoginException;
+    private ScheduledFuture<?> scheduledRenewal;
+
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong renewalFailures = new AtomicLong();
+
+    @Autowired
+    public KerberosCredentialCache(ProxyConfig proxyConfig) {
+        this.proxyConfig = proxyConfig;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kerberos-renewal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the logged-in Subject, logging in only if there is no Subject with a valid TGT.
+     */
+    public Subject getSubject() throws LoginException {
+        Subject current = subject;
+        if (current != null && System.currentTimeMillis() < ticketEndTime) {
+            return current;
+        }
+        return login();
+    }
+
+    private synchronized Subject login() throws LoginException {
+        // Another caller may have logged in while we waited for the lock
+        if (subject != null && System.currentTimeMillis() < ticketEndTime) {
+            return subject;
+        }
+        if (lastLoginException != null
+                && System.currentTimeMillis() - lastLoginFailure < proxyConfig.getKerberos().getRetryInterval()) {
+            throw lastLoginException;
+        }
+        return doLogin();
+    }
+
+    private synchronized Subject doLogin() throws LoginException {
+        String user = proxyConfig.getUsername();
+        String pass = proxyConfig.getPassword();
+        if (user == null || user.isEmpty() || pass == null) {
+            throw new LoginException("No configured credentials for Kerberos login");
+        }
+        try {
+            // For DOMAIN\\user, JAAS expects user@REALM or just user; here we pass as is via callback
+            LoginContext lc = new LoginContext("spnego", null, new SimpleCredCallback(user, pass), new SpnegoLoginConfig());
+            lc.login();
+            logins.incrementAndGet();
+            lastLoginException = null;
+            // In-flight requests may still run under the old Subject, so it is not logged out here
+            loginContext = lc;
+            Subject loggedIn = lc.getSubject();
+            KerberosTicket tgt = findTgt(loggedIn);
+            ticketEndTime = tgt != null ? tgt.getEndTime().getTime() : Long.MAX_VALUE;
+            subject = loggedIn;
+            logger.info("Kerberos login for [{}] succeeded; TGT valid until {}", user,
+                    tgt != null ? tgt.getEndTime() : "unknown");
+            scheduleRenewal(tgt);
+            return loggedIn;
+        } catch (LoginException e) {
+            lastLoginFailure = System.currentTimeMillis();
+            lastLoginException = e;
+            throw e;
+        }
+    }
+
+    private synchronized void scheduleRenewal(KerberosTicket tgt) {
+        if (scheduledRenewal != null) {
+            scheduledRenewal.cancel(false);
+            scheduledRenewal = null;
+        }
+        if (tgt == null || scheduler.isShutdown()) {
+            return;
+        }
+        long start = tgt.getStartTime() != null ? tgt.getStartTime().getTime() : tgt.getAuthTime().getTime();
+        long end = tgt.getEndTime().getTime();
+        long renewAt = end - Math.min(proxyConfig.getKerberos().getRenewBefore(), (end - start) / 2);
+        long delay = Math.max(0, renewAt - System.currentTimeMillis());
+        scheduledRenewal = scheduler.schedule(this::renew, delay, TimeUnit.MILLISECONDS);
+        logger.debug("Kerberos TGT renewal scheduled in {} ms", delay);
+    }
+
+    // Runs on the renewal thread: renew the TGT in place, or log in again if that is not possible
+    private void renew() {
+        KerberosTicket tgt;
+        synchronized (this) {
+            tgt = subject != null ? findTgt(subject) : null;
+        }
+        if (tgt == null) {
+            return;
+        }
+        Long renewTill = tgt.getRenewTill() != null ? tgt.getRenewTill().getTime() : null;
+        if (tgt.isRenewable() && renewTill != null && renewTill > System.currentTimeMillis()) {
+            try {
+                tgt.refresh();
+                renewals.incrementAndGet();
+                ticketEndTime = tgt.getEndTime().getTime();
+                logger.info("Kerberos TGT renewed; valid until {}", tgt.getEndTime());
+                scheduleRenewal(tgt);
+                return;
+            } catch (RefreshFailedException | RuntimeException e) {
+                renewalFailures.incrementAndGet();
+                logger.warn("Kerberos TGT renewal failed, logging in again: {}", e.getMessage());
+            }
+        }
+        // Requests keep using the current TGT while the new login is in progress
+        try {
+            doLogin();
+        } catch (LoginException e) {
+            logger.warn("Kerberos re-login failed: {}", e.getMessage());
+            synchronized (this) {
+                if (!scheduler.isShutdown()) {
+                    scheduledRenewal = scheduler.schedule(this::renew,
+                            proxyConfig.getKerberos().getRetryInterval(), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    private static KerberosTicket findTgt(Subject subject) {
+        for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+            if (ticket.getServer().getName().startsWith("krbtgt/")) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        if (loginContext != null) {
+            try {
+                loginContext.logout();
+            } catch (LoginException e) {
+                logger.debug("Kerberos logout failed: {}", e.getMessage());
+            }
+            loginContext = null;
+        }
+        subject = null;
+        ticketEndTime = 0;
+    }
+
+    public long getLogins() {
+        return logins.get();
+    }
+
+    public long getRenewals() {
+        return renewals.get();
+    }
+
+    public long getRenewalFailures() {
+        return renewalFailures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "KerberosCredentialCache{" +
+                "logins=" + logins.get() +
+                ", renewals=" + renewals.get() +
+                ", renewalFailures=" + renewalFailures.get() +
+                '}';
+    }
+
+    private static class SimpleCredCallback implements CallbackHandler {
+        private final String username;
+        private final String password;
+        SimpleCredCallback(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+        @Override
+        public void handle(Callback[] callbacks) throws UnsupportedCallbackException {
+            for (Callback cb : callbacks) {
+                if (cb instanceof NameCallback) {
+                    ((NameCallback) cb).setName(username);
+                } else if (cb instanceof PasswordCallback) {
+                    ((PasswordCallback) cb).setPassword(password.toCharArray());
+                } else {
+                    throw new UnsupportedCallbackException(cb);
+                }
+            }
+        }
+    }
+
+    private static class SpnegoLoginConfig extends Configuration {
+        @Override
+        public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+            Map<String, String> options = new HashMap<>();
+            options.put("useTicketCache", "false");
+            options.put("storeKey", "false");
+            options.put("refreshKrb5Config", "true");
+            options.put("isInitiator", "true");
+            // Username/password come from the CallbackHandler; doNotPrompt/useFirstPass would bypass it
+            options.put("useKeyTab", "false");
+            // On Windows, this still goes through SSPI
+            return new AppConfigurationEntry[]{
+                    new AppConfigurationEntry(
+                            "com.sun.security.auth.module.Krb5LoginModule",
+                            LoginModuleControlFlag.REQUIRED,
+                            options
+                    )
+            };
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.enterprise.proxy.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicNameValuePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OAuth2 client-credentials token provider with caching and proactive refresh.
+ * <p>
+ * The access token is cached until shortly before {@code expires_in} and refreshed in the
+ * background ahead of expiry. Callers that need a token while a fetch is in progress wait on
+ * that single in-flight request instead of each hitting the token endpoint.
+ */
+public class OAuthTokenProvider implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OAuthTokenProvider.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // A cached token is not handed out within this margin of its expiry (at most a quarter of its lifetime)
+    private static final long EXPIRY_SKEW_MILLIS = 5000;
+    // Background refresh starts this fraction of the lifetime before expiry (at least twice the skew,
+    // at most half the lifetime)
+    private static final double REFRESH_AHEAD_RATIO = 0.1;
+    // Floor for the background refresh delay, so short-lived tokens cannot cause a fetch loop
+    private static final long MIN_REFRESH_DELAY_MILLIS = 1000;
+
+    private final CloseableHttpClient httpClient;
+    private final String tokenUrl;
+    private final List<NameValuePair> form;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile AccessToken current;
+    private CompletableFuture<AccessToken> inFlight;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * @param httpClient long-lived client used for all token requests (e.g. one set up for mTLS)
+     * @param tokenUrl   token endpoint
+     * @param scope      requested scope
+     */
+    public OAuthTokenProvider(CloseableHttpClient httpClient, String tokenUrl, String scope) {
+        this.httpClient = httpClient;
+        this.tokenUrl = tokenUrl;
+        this.form = new ArrayList<>();
+        this.form.add(new BasicNameValuePair("grant_type", "client_credentials"));
+        this.form.add(new BasicNameValuePair("scope", scope));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "oauth-token-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns a valid access token, fetching one only if none is cached or it is about to expire.
+     */
+    public String getAccessToken() throws IOException {
+        AccessToken token = current;
+        if (token != null && token.isUsable()) {
+            return token.value;
+        }
+        try {
+            return refresh().get().value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for access token", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Starts a token fetch unless one is already in flight, and returns it.
+     */
+    public synchronized CompletableFuture<AccessToken> refresh() {
+        if (inFlight == null) {
+            CompletableFuture<AccessToken> fetch = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fetchToken();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, scheduler);
+            inFlight = fetch;
+            fetch.whenComplete(this::onFetchComplete);
+            return fetch;
+        }
+        return inFlight;
+    }
+
+    private synchronized void onFetchComplete(AccessToken token, Throwable ex) {
+        inFlight = null;
+        if (ex != null) {
+            Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+            logger.warn("Access token fetch failed: {}", cause.getMessage());
+            AccessToken cached = current;
+            if (cached != null && cached.isUsable() && !scheduler.isShutdown()) {
+                // Background refresh failed but the cached token is still good: retry shortly
+                scheduledRefresh = scheduler.schedule(this::refresh, EXPIRY_SKEW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        current = token;
+        long refreshIn = token.refreshAt - System.currentTimeMillis();
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (!scheduler.isShutdown()) {
+            scheduledRefresh = scheduler.schedule(this::refresh, Math.max(MIN_REFRESH_DELAY_MILLIS, refreshIn),
+                    TimeUnit.MILLISECONDS);
+        }
+        logger.debug("Access token cached, background refresh in {} ms", refreshIn);
+    }
+
+    private AccessToken fetchToken() throws IOException {
+        HttpPost post = new HttpPost(tokenUrl);
+        post.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+
+        long requestedAt = System.currentTimeMillis();
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String body = response.getEntity() != null
+                    ? EntityStreams.toString(response.getEntity(), StandardCharsets.UTF_8)
+                    : "";
+            if (statusCode != 200) {
+                throw new IOException("Failed to get token, status=" + statusCode + ", body=" + body);
+            }
+            return parse(body, requestedAt);
+        }
+    }
+
+    static AccessToken parse(String body, long requestedAt) throws IOException {
+        JsonNode json = objectMapper.readTree(body);
+        JsonNode accessToken = json.get("access_token");
+        if (accessToken == null || !accessToken.isTextual()) {
+            throw new IOException("Token response has no access_token");
+        }
+        long expiresIn = json.path("expires_in").asLong(3600);
+        if (expiresIn <= 0) {
+            throw new IOException("Token response has a non-positive expires_in: " + json.get("expires_in"));
+        }
+        // Measure expiry from when the request was sent, so network time is not counted as validity.
+        // Margins scale down with short lifetimes so the token is still usable and refreshed mid-life.
+        long lifetimeMillis = expiresIn * 1000;
+        long skew = Math.min(EXPIRY_SKEW_MILLIS, lifetimeMillis / 4);
+        long refreshAhead = Math.min(lifetimeMillis / 2,
+                Math.max(EXPIRY_SKEW_MILLIS * 2, (long) (lifetimeMillis * REFRESH_AHEAD_RATIO)));
+        return new AccessToken(accessToken.asText(),
+                json.path("token_type").asText("Bearer"),
+                requestedAt + lifetimeMillis,
+                requestedAt + lifetimeMillis - skew,
+                requestedAt + lifetimeMillis - refreshAhead);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public static final class AccessToken {
+        private final String value;
+        private final String type;
+        private final long expiresAt;
+        private final long usableUntil;
+        private final long refreshAt;
+
+        AccessToken(String value, String type, long expiresAt, long usableUntil, long refreshAt) {
+            this.value = value;
+            this.type = type;
+            this.expiresAt = expiresAt;
+            this.usableUntil = usableUntil;
+            this.refreshAt = refreshAt;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        long getRefreshAt() {
+            return refreshAt;
+        }
+
+        boolean isUsable() {
+            return System.currentTimeMillis() < usableUntil;
+        }
+    }
+}
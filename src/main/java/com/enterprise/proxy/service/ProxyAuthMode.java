@@ -0,0 +1,11 @@
+package com.enterprise.proxy.service;
+
+/**
+ * Proxy authentication modes, each backed by its own long-lived pooled client.
+ */
+public enum ProxyAuthMode {
+    KERBEROS,
+    NEGOTIATE,
+    NTLM,
+    BASIC
+}
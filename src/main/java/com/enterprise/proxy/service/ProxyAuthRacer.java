@@ -0,0 +1,207 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.ProxyConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Races proxy auth schemes Happy Eyeballs style ({@code proxy.auth.race}).
+ * <p>
+ * The first candidate starts at once and each further one {@code proxy.auth.race-stagger} ms later,
+ * or as soon as the previous one failed. The first attempt whose response gets past the proxy wins:
+ * a 2xx attempt must {@link Attempt#claim() claim} the race before it touches the body, so only one
+ * attempt ever writes it. The remaining attempts are aborted through the request they registered
+ * with {@link #track(HttpRequestBase)}.
+ */
+@Component
+public class ProxyAuthRacer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyAuthRacer.class);
+
+    // Attempt run by the current racer thread, so request methods can register their request
+    private static final ThreadLocal<Attempt> currentAttempt = new ThreadLocal<>();
+
+    private final ProxyConfig proxyConfig;
+    private final ExecutorService executor;
+
+    @Autowired
+    public ProxyAuthRacer(ProxyConfig proxyConfig) {
+        this.proxyConfig = proxyConfig;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "auth-race-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs one attempt with a single scheme and returns its result string.
+     */
+    interface AttemptRunner {
+        String run(ProxyAuthMode mode, Attempt attempt);
+    }
+
+    /**
+     * Makes the request abortable by the race, if it is executed by a race attempt.
+     */
+    static void track(HttpRequestBase request) {
+        Attempt attempt = currentAttempt.get();
+        if (attempt != null) {
+            attempt.track(request);
+        }
+    }
+
+    /**
+     * Whether the current thread runs a race attempt that was aborted or lost to another attempt.
+     */
+    static boolean isCancelled() {
+        Attempt attempt = currentAttempt.get();
+        return attempt != null && (attempt.cancelled || attempt.lostTo() != null);
+    }
+
+    /**
+     * Races the candidates and returns the winning attempt, or the last candidate's if none got
+     * past the proxy (like the serial chain).
+     */
+    Attempt race(List<ProxyAuthMode> candidates, AttemptRunner runner) {
+        long stagger = proxyConfig.getAuth().getRaceStagger();
+        AtomicReference<Attempt> claim = new AtomicReference<>();
+        CompletionService<Attempt> completion = new ExecutorCompletionService<>(executor);
+        List<Attempt> attempts = new ArrayList<>(candidates.size());
+        try {
+            start(candidates.get(0), claim, runner, completion, attempts);
+            int finished = 0;
+            while (finished < candidates.size()) {
+                boolean pending = attempts.size() < candidates.size();
+                Future<Attempt> done = pending ? completion.poll(stagger, TimeUnit.MILLISECONDS) : completion.take();
+                if (done == null) {
+                    logger.debug("No answer after {} ms, starting {}", stagger, candidates.get(attempts.size()));
+                    start(candidates.get(attempts.size()), claim, runner, completion, attempts);
+                    continue;
+                }
+                finished++;
+                Attempt attempt = done.get();
+                if (attempt.won()) {
+                    logger.info("Auth scheme race won by {}", attempt.mode);
+                    return attempt;
+                }
+                // Failed early: no need to wait out the stagger
+                if (attempts.size() < candidates.size()) {
+                    start(candidates.get(attempts.size()), claim, runner, completion, attempts);
+                }
+            }
+            return attempts.get(attempts.size() - 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Attempt interrupted = new Attempt(candidates.get(0), claim);
+            interrupted.result = "Error: interrupted";
+            return interrupted;
+        } catch (ExecutionException e) {
+            // Attempts catch their own exceptions
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Attempt attempt : attempts) {
+                if (claim.get() != attempt) {
+                    attempt.cancel();
+                }
+            }
+        }
+    }
+
+    private void start(ProxyAuthMode mode, AtomicReference<Attempt> claim, AttemptRunner runner,
+                       CompletionService<Attempt> completion, List<Attempt> attempts) {
+        Attempt attempt = new Attempt(mode, claim);
+        attempts.add(attempt);
+        completion.submit(() -> {
+            currentAttempt.set(attempt);
+            try {
+                attempt.result = runner.run(mode, attempt);
+            } catch (RuntimeException e) {
+                logger.warn("{} attempt failed: {}", mode, e.toString());
+                attempt.result = "Error: " + e;
+            } finally {
+                currentAttempt.remove();
+            }
+            return attempt;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * One scheme's attempt within a race.
+     */
+    static final class Attempt {
+        final ProxyAuthMode mode;
+        private final AtomicReference<Attempt> claim;
+        private volatile HttpRequestBase request;
+        private volatile boolean cancelled;
+        private volatile String result;
+
+        private Attempt(ProxyAuthMode mode, AtomicReference<Attempt> claim) {
+            this.mode = mode;
+            this.claim = claim;
+        }
+
+        /**
+         * Claims the race for this attempt; false if another attempt already holds it.
+         */
+        boolean claim() {
+            return claim.compareAndSet(null, this) || claim.get() == this;
+        }
+
+        String result() {
+            return result;
+        }
+
+        private Attempt lostTo() {
+            Attempt winner = claim.get();
+            return winner != null && winner != this ? winner : null;
+        }
+
+        // A claimed body wins even if reading it failed; otherwise any response past the proxy does
+        private boolean won() {
+            if (claim.get() == this) {
+                return true;
+            }
+            String outcome = ProxyMetrics.outcome(result);
+            return (ProxyMetrics.OUTCOME_SUCCESS.equals(outcome) || ProxyMetrics.OUTCOME_HTTP_ERROR.equals(outcome))
+                    && claim();
+        }
+
+        private void track(HttpRequestBase request) {
+            this.request = request;
+            if (cancelled) {
+                request.abort();
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            HttpRequestBase current = request;
+            if (current != null) {
+                current.abort();
+            }
+        }
+    }
+}
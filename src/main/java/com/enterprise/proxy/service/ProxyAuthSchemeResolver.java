@@ -0,0 +1,117 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.ProxyConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which proxy auth scheme worked for each proxy host:port so later
+ * requests go straight to it, and briefly skips schemes that returned 407.
+ */
+@Component
+public class ProxyAuthSchemeResolver {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ProxyAuthSchemeResolver.class);
+    
+    // Probe order when nothing is known (like PowerShell): Kerberos, then NTLM, then Basic
+    private static final List<ProxyAuthMode> DEFAULT_ORDER = Collections.unmodifiableList(
+            Arrays.asList(ProxyAuthMode.KERBEROS, ProxyAuthMode.NTLM, ProxyAuthMode.BASIC));
+    
+    private final ProxyConfig proxyConfig;
+    private final Map<String, ProxyState> states = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public ProxyAuthSchemeResolver(ProxyConfig proxyConfig) {
+        this.proxyConfig = proxyConfig;
+    }
+    
+    /**
+     * Schemes to try for the given proxy, remembered winner first, recently failed schemes left out.
+     */
+    public List<ProxyAuthMode> candidates(String proxyKey) {
+        ProxyState state = states.get(proxyKey);
+        if (state == null) {
+            return DEFAULT_ORDER;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            List<ProxyAuthMode> result = new ArrayList<>(DEFAULT_ORDER.size());
+            if (state.winner != null && now - state.winnerSince < proxyConfig.getAuth().getSchemeTtl()) {
+                result.add(state.winner);
+            }
+            for (ProxyAuthMode mode : DEFAULT_ORDER) {
+                Long failedAt = state.failures.get(mode);
+                if (failedAt != null && now - failedAt >= proxyConfig.getAuth().getNegativeTtl()) {
+                    state.failures.remove(mode);
+                    failedAt = null;
+                }
+                if (failedAt == null && !result.contains(mode)) {
+                    result.add(mode);
+                }
+            }
+            // Everything failed recently: still try the full chain rather than nothing
+            return result.isEmpty() ? DEFAULT_ORDER : result;
+        }
+    }
+    
+    /**
+     * Whether a scheme that worked for the proxy is remembered and still within its TTL.
+     */
+    public boolean isResolved(String proxyKey) {
+        ProxyState state = states.get(proxyKey);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.winner != null
+                    && System.currentTimeMillis() - state.winnerSince < proxyConfig.getAuth().getSchemeTtl();
+        }
+    }
+    
+    public void recordSuccess(String proxyKey, ProxyAuthMode mode) {
+        ProxyState state = states.computeIfAbsent(proxyKey, k -> new ProxyState());
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            if (state.winner != mode) {
+                logger.info("Proxy auth scheme for [{}] resolved to {}", proxyKey, mode);
+                state.winnerSince = now;
+            } else if (now - state.winnerSince >= proxyConfig.getAuth().getSchemeTtl()) {
+                // Re-probe after TTL confirmed the same scheme; trust it for another period
+                state.winnerSince = now;
+            }
+            state.winner = mode;
+            state.failures.remove(mode);
+        }
+    }
+    
+    public void recordFailure(String proxyKey, ProxyAuthMode mode) {
+        ProxyState state = states.computeIfAbsent(proxyKey, k -> new ProxyState());
+        synchronized (state) {
+            state.failures.put(mode, System.currentTimeMillis());
+            if (state.winner == mode) {
+                logger.warn("Remembered proxy auth scheme {} for [{}] returned 407; probing again", mode, proxyKey);
+                state.winner = null;
+            }
+        }
+    }
+    
+    public void clear() {
+        states.clear();
+    }
+    
+    private static class ProxyState {
+        private ProxyAuthMode winner;
+        private long winnerSince;
+        private final Map<ProxyAuthMode, Long> failures = new EnumMap<>(ProxyAuthMode.class);
+    }
+}
@@ -0,0 +1,209 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.ProxyConfig;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AUTH;
+import org.apache.http.auth.AuthProtocolState;
+import org.apache.http.auth.AuthScheme;
+import org.apache.http.auth.AuthState;
+import org.apache.http.auth.MalformedChallengeException;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.config.AuthSchemes;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the user token of connection-based proxy auth (NTLM, Negotiate) per identity.
+ * <p>
+ * HttpClient marks an NTLM-authenticated connection with the user token and only leases it
+ * to requests carrying the same token. Seeding each request context with the remembered token
+ * lets later requests for the same identity pick up an already authenticated pooled connection
+ * and skip the Type1/Type2/Type3 handshake.
+ * <p>
+ * With {@code proxy.auth.preemptive}, each identity also gets an {@link AuthCache} shared by all of its
+ * request contexts. HttpClient stores Basic and Digest schemes there after a successful challenge (Digest
+ * with its nonce) and sends them with the first request to that proxy, skipping the 407 round trip.
+ * A scheme the proxy rejects is dropped from the cache and counted; HttpClient's own challenge handling
+ * deals with the 407 inside the same {@code execute()}.
+ */
+@Component
+public class ProxyAuthSessionCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ProxyAuthSessionCache.class);
+    
+    private static final String SEEDED_ATTRIBUTE = "proxy.auth.session.seeded";
+    
+    private final ProxyConfig proxyConfig;
+    private final Map<String, Object> userTokens = new ConcurrentHashMap<>();
+    private final Map<String, AuthCache> authCaches = new ConcurrentHashMap<>();
+    
+    private final AtomicLong handshakesPerformed = new AtomicLong();
+    private final AtomicLong handshakesAvoided = new AtomicLong();
+    private final AtomicLong preemptiveSent = new AtomicLong();
+    private final AtomicLong preemptiveRejected = new AtomicLong();
+    
+    @Autowired
+    public ProxyAuthSessionCache(ProxyConfig proxyConfig) {
+        this.proxyConfig = proxyConfig;
+    }
+    
+    /**
+     * Creates a request context bound to the identity's authenticated connections, if any.
+     */
+    public HttpClientContext newContext(String identity) {
+        HttpClientContext context = HttpClientContext.create();
+        Object userToken = userTokens.get(identity);
+        if (userToken != null) {
+            context.setUserToken(userToken);
+            context.setAttribute(SEEDED_ATTRIBUTE, Boolean.TRUE);
+        }
+        if (proxyConfig.getAuth().isPreemptive()) {
+            context.setAuthCache(new ContextAuthCache(authCaches.computeIfAbsent(identity, key -> new BasicAuthCache())));
+        }
+        return context;
+    }
+    
+    /**
+     * Sends Basic credentials to these proxies from the identity's first request on, without waiting
+     * for a challenge. Does nothing unless preemptive auth is enabled.
+     */
+    public void primeBasic(String identity, Collection<HttpHost> proxies) {
+        if (!proxyConfig.getAuth().isPreemptive()) {
+            return;
+        }
+        AuthCache authCache = authCaches.computeIfAbsent(identity, key -> new BasicAuthCache());
+        for (HttpHost proxy : proxies) {
+            // Keep a scheme learned from a challenge, e.g. Digest with its nonce
+            if (authCache.get(proxy) == null) {
+                authCache.put(proxy, proxyBasicScheme());
+            }
+        }
+    }
+    
+    // A scheme that has seen a Proxy-Authenticate challenge writes Proxy-Authorization, not Authorization
+    private static AuthScheme proxyBasicScheme() {
+        BasicScheme scheme = new BasicScheme();
+        try {
+            scheme.processChallenge(new BasicHeader(AUTH.PROXY_AUTH, AuthSchemes.BASIC));
+        } catch (MalformedChallengeException e) {
+            throw new IllegalStateException(e);
+        }
+        return scheme;
+    }
+    
+    /**
+     * Records the outcome of a request executed with a context from {@link #newContext(String)}.
+     */
+    public void onResponse(String identity, HttpClientContext context, int statusCode) {
+        if (statusCode == 407) {
+            // Credentials no longer accepted; do not steer requests to these connections
+            userTokens.remove(identity);
+            return;
+        }
+        
+        AuthState proxyAuthState = context.getProxyAuthState();
+        boolean handshake = proxyAuthState != null && proxyAuthState.getState() != AuthProtocolState.UNCHALLENGED;
+        if (handshake) {
+            handshakesPerformed.incrementAndGet();
+        } else if (context.getAttribute(SEEDED_ATTRIBUTE) != null) {
+            handshakesAvoided.incrementAndGet();
+        }
+        
+        Object userToken = context.getUserToken();
+        if (userToken != null && !userToken.equals(userTokens.put(identity, userToken))) {
+            logger.debug("Stored authenticated session token for [{}]", identity);
+        }
+    }
+    
+    public void clear() {
+        userTokens.clear();
+        authCaches.clear();
+    }
+    
+    public long getHandshakesPerformed() {
+        return handshakesPerformed.get();
+    }
+    
+    public long getHandshakesAvoided() {
+        return handshakesAvoided.get();
+    }
+    
+    /**
+     * Requests sent with cached Basic/Digest proxy credentials instead of waiting for a 407.
+     */
+    public long getPreemptiveSent() {
+        return preemptiveSent.get();
+    }
+    
+    /**
+     * Cached proxy credentials the proxy rejected.
+     */
+    public long getPreemptiveRejected() {
+        return preemptiveRejected.get();
+    }
+    
+    @Override
+    public String toString() {
+        return "ProxyAuthSessionCache{" +
+                "identities=" + userTokens.size() +
+                ", handshakesPerformed=" + handshakesPerformed.get() +
+                ", handshakesAvoided=" + handshakesAvoided.get() +
+                ", preemptiveSent=" + preemptiveSent.get() +
+                ", preemptiveRejected=" + preemptiveRejected.get() +
+                '}';
+    }
+    
+    // One request's view of the identity's shared cache. HttpClient looks up the proxy once before sending,
+    // stores the scheme after a successful challenge, and removes it when the proxy rejects it.
+    private final class ContextAuthCache implements AuthCache {
+        
+        private final AuthCache shared;
+        private boolean sent;
+        private boolean rejected;
+        
+        ContextAuthCache(AuthCache shared) {
+            this.shared = shared;
+        }
+        
+        @Override
+        public void put(HttpHost host, AuthScheme authScheme) {
+            shared.put(host, authScheme);
+        }
+        
+        @Override
+        public AuthScheme get(HttpHost host) {
+            AuthScheme authScheme = shared.get(host);
+            if (authScheme != null && !sent) {
+                sent = true;
+                preemptiveSent.incrementAndGet();
+            }
+            return authScheme;
+        }
+        
+        @Override
+        public void remove(HttpHost host) {
+            if (sent && !rejected) {
+                rejected = true;
+                preemptiveRejected.incrementAndGet();
+                logger.debug("Proxy [{}] rejected cached credentials", host);
+            }
+            shared.remove(host);
+        }
+        
+        @Override
+        public void clear() {
+            shared.clear();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.ProxyConfig;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proxy nodes from {@code proxy.endpoints}, health-checked in the background.
+ * <p>
+ * Every node is probed with a TCP connect each {@code proxy.health.interval}; probe and real connect
+ * times feed a moving average, and {@link #routePlanner()} sends each new connection to the healthy
+ * node with the lowest one. A node is taken out as soon as a probe or a real connect to it fails,
+ * and connects to a node are capped at {@code proxy.health.connect-timeout}, so a dead node costs
+ * at most that long once; {@link ProxyService} then retries on the next node. A node that accepts
+ * connections but then stalls or breaks them is taken out too, but only for failures in the exchange
+ * with the node itself: a CONNECT that times out (after {@code proxy.health.read-timeout}), is reset
+ * or is refused with 502/504, and a forwarded request the node resets before its response head or
+ * answers with 502/504 (see {@link #requestFailed} and {@link #responseInterceptor()}). Once a tunnel
+ * is up, or a forwarded response has arrived, the request's own timeout applies and failures are the
+ * target's. Failed nodes keep being probed and return when they answer. With fewer than two endpoints the pool is inactive and
+ * clients connect to {@code proxy.host}/{@code proxy.port} as before.
+ */
+@Component
+public class ProxyEndpointPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyEndpointPool.class);
+
+    // Weight of the newest sample in the latency moving average
+    private static final double LATENCY_ALPHA = 0.3;
+
+    private final ProxyConfig proxyConfig;
+    private final CachingDnsResolver dnsResolver;
+    private final List<Node> nodes;
+    private final Map<String, Node> nodesByKey = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> connectFailed = new ThreadLocal<>();
+    // Node the last request on this thread was routed to
+    private final ThreadLocal<Routing> routed = new ThreadLocal<>();
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ProxyEndpointPool(ProxyConfig proxyConfig, CachingDnsResolver dnsResolver) {
+        this.proxyConfig = proxyConfig;
+        this.dnsResolver = dnsResolver;
+        List<Node> parsed = new ArrayList<>();
+        for (String endpoint : proxyConfig.getEndpoints()) {
+            if (endpoint == null || endpoint.trim().isEmpty()) {
+                continue;
+            }
+            Node node = new Node(parseEndpoint(endpoint.trim(), proxyConfig.getPort()));
+            if (nodesByKey.putIfAbsent(key(node.host), node) == null) {
+                parsed.add(node);
+            }
+        }
+        this.nodes = Collections.unmodifiableList(parsed);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isActive()) {
+            return;
+        }
+        scheduler = Executors.newScheduledThreadPool(Math.min(nodes.size(), 4), r -> {
+            Thread t = new Thread(r, "proxy-health");
+            t.setDaemon(true);
+            return t;
+        });
+        for (Node node : nodes) {
+            scheduler.scheduleWithFixedDelay(() -> probe(node), 0,
+                    proxyConfig.getHealth().getInterval(), TimeUnit.MILLISECONDS);
+        }
+        logger.info("Proxy endpoint pool: {} nodes, health check every {} ms", nodes.size(),
+                proxyConfig.getHealth().getInterval());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isActive() {
+        return nodes.size() > 1;
+    }
+
+    /**
+     * Returns all proxy nodes, or just proxy.host/proxy.port when the pool is inactive.
+     */
+    public List<HttpHost> endpoints() {
+        List<HttpHost> hosts = new ArrayList<>();
+        if (nodes.isEmpty()) {
+            hosts.add(new HttpHost(proxyConfig.getHost(), proxyConfig.getPort()));
+        } else {
+            for (Node node : nodes) {
+                hosts.add(node.host);
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * Returns the healthy node with the lowest connect latency; if all are down, the one that
+     * failed longest ago.
+     */
+    public HttpHost select() {
+        return selectNode().host;
+    }
+
+    private Node selectNode() {
+        Node best = null;
+        for (Node node : nodes) {
+            if (node.healthy && (best == null || node.score() < best.score())) {
+                best = node;
+            }
+        }
+        if (best == null) {
+            for (Node node : nodes) {
+                if (best == null || node.lastFailure < best.lastFailure) {
+                    best = node;
+                }
+            }
+        }
+        best.selections.incrementAndGet();
+        return best;
+    }
+
+    /**
+     * Route planner that replaces the configured proxy with {@link #select()}; null when inactive.
+     */
+    HttpRoutePlanner routePlanner() {
+        if (!isActive()) {
+            return null;
+        }
+        return new DefaultRoutePlanner(null) {
+            @Override
+            public HttpRoute determineRoute(HttpHost host, HttpRequest request, HttpContext context) throws HttpException {
+                HttpRoute route = super.determineRoute(host, request, context);
+                if (route.getProxyHost() == null) {
+                    routed.remove();
+                    return route;
+                }
+                Node node = selectNode();
+                HttpRoute selected = new HttpRoute(route.getTargetHost(), route.getLocalAddress(), node.host,
+                        route.isSecure());
+                routed.set(new Routing(node, selected.isTunnelled()));
+                return selected;
+            }
+        };
+    }
+
+    /**
+     * Response interceptor that takes a node out when it answers 502 or 504 itself: to a request it
+     * forwards, or to the CONNECT of a tunnel (HttpClient hands a refused CONNECT back as the
+     * response); null when inactive. Responses inside an established tunnel come from the target.
+     */
+    HttpResponseInterceptor responseInterceptor() {
+        if (!isActive()) {
+            return null;
+        }
+        return (response, context) -> {
+            Routing routing = routed.get();
+            if (routing == null) {
+                return;
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (isGatewayError(statusCode) && (!routing.tunnelled || routing.withNode)) {
+                routing.node.failed(response.getStatusLine().toString());
+            }
+            routing.withNode = false;
+        };
+    }
+
+    /**
+     * Counts a request that failed on this thread against the node it was routed to when the node
+     * broke it before the tunnel was up or the response head arrived: a CONNECT that timed out or was
+     * reset, or a forwarded request the node reset. Read timeouts of forwarded requests are left out,
+     * as the target may just be slow; failed connects are already counted by {@link #socketFactory}.
+     */
+    void requestFailed(IOException e) {
+        Routing routing = routed.get();
+        if (routing == null || !routing.withNode || Boolean.TRUE.equals(connectFailed.get())) {
+            return;
+        }
+        if ((routing.tunnelled && e instanceof SocketTimeoutException) || e instanceof SocketException
+                || e instanceof NoHttpResponseException) {
+            routing.node.failed(e.toString());
+        }
+    }
+
+    private static boolean isGatewayError(int statusCode) {
+        return statusCode == 502 || statusCode == 504;
+    }
+
+    /**
+     * Wraps the factory used to connect to the proxy so connect times and failures update node health.
+     */
+    ConnectionSocketFactory socketFactory(ConnectionSocketFactory delegate) {
+        if (!isActive()) {
+            return delegate;
+        }
+        return new ConnectionSocketFactory() {
+            @Override
+            public Socket createSocket(HttpContext context) throws IOException {
+                return delegate.createSocket(context);
+            }
+
+            @Override
+            public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                        InetSocketAddress localAddress, HttpContext context) throws IOException {
+                Node node = nodesByKey.get(key(host));
+                if (node == null) {
+                    return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+                }
+                int cap = proxyConfig.getHealth().getConnectTimeout();
+                int timeout = connectTimeout > 0 ? Math.min(connectTimeout, cap) : cap;
+                long start = System.nanoTime();
+                try {
+                    Socket socket = delegate.connectSocket(timeout, sock, host, remoteAddress, localAddress, context);
+                    node.succeeded((System.nanoTime() - start) / 1_000_000.0);
+                    // Bounds the CONNECT exchange; HttpClient applies the request's own timeout once the route is up
+                    int readCap = proxyConfig.getHealth().getReadTimeout();
+                    if (readCap > 0 && (socket.getSoTimeout() == 0 || socket.getSoTimeout() > readCap)) {
+                        socket.setSoTimeout(readCap);
+                    }
+                    Routing routing = routed.get();
+                    if (routing != null && routing.node == node) {
+                        routing.withNode = true;
+                    }
+                    return socket;
+                } catch (IOException e) {
+                    node.failed(e.getMessage());
+                    connectFailed.set(Boolean.TRUE);
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps the TLS factory so layering TLS over a tunnel marks the end of the exchange with the node.
+     */
+    LayeredConnectionSocketFactory socketFactory(LayeredConnectionSocketFactory delegate) {
+        if (!isActive()) {
+            return delegate;
+        }
+        return new LayeredConnectionSocketFactory() {
+            @Override
+            public Socket createSocket(HttpContext context) throws IOException {
+                return delegate.createSocket(context);
+            }
+
+            @Override
+            public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                        InetSocketAddress localAddress, HttpContext context) throws IOException {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            }
+
+            @Override
+            public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+                    throws IOException {
+                Routing routing = routed.get();
+                if (routing != null) {
+                    routing.withNode = false;
+                }
+                return delegate.createLayeredSocket(socket, target, port, context);
+            }
+        };
+    }
+
+    /**
+     * Returns whether a connect to a node failed on this thread since the last call, and resets it.
+     */
+    boolean takeConnectFailure() {
+        boolean failed = Boolean.TRUE.equals(connectFailed.get());
+        connectFailed.remove();
+        return failed;
+    }
+
+    int size() {
+        return Math.max(1, nodes.size());
+    }
+
+    private void probe(Node node) {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            InetAddress[] addresses = dnsResolver.resolve(node.host.getHostName());
+            socket.connect(new InetSocketAddress(addresses[0], node.host.getPort()),
+                    proxyConfig.getHealth().getConnectTimeout());
+            node.succeeded((System.nanoTime() - start) / 1_000_000.0);
+        } catch (IOException e) {
+            node.failed(e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warn("Health check of proxy {} failed: {}", node.host.toHostString(), e.toString());
+        }
+    }
+
+    private static HttpHost parseEndpoint(String endpoint, int defaultPort) {
+        int colon = endpoint.lastIndexOf(':');
+        if (colon > 0 && endpoint.indexOf(']') < colon) {
+            return new HttpHost(endpoint.substring(0, colon), Integer.parseInt(endpoint.substring(colon + 1)));
+        }
+        return new HttpHost(endpoint, defaultPort);
+    }
+
+    private static String key(HttpHost host) {
+        return host.getHostName().toLowerCase(Locale.ROOT) + ":" + host.getPort();
+    }
+
+    @Override
+    public String toString() {
+        return "ProxyEndpointPool" + nodes;
+    }
+
+    // Where the current request on a thread went, and whether it is still talking to the node itself
+    private static final class Routing {
+        private final Node node;
+        private final boolean tunnelled;
+        // From a fresh connect until the tunnel is up or the response head arrived
+        private boolean withNode;
+
+        Routing(Node node, boolean tunnelled) {
+            this.node = node;
+            this.tunnelled = tunnelled;
+        }
+    }
+
+    private static final class Node {
+        private final HttpHost host;
+        private volatile boolean healthy = true;
+        // Moving average of connect times in ms, NaN until the first sample
+        private volatile double latencyMillis = Double.NaN;
+        private volatile long lastFailure;
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicLong selections = new AtomicLong();
+
+        Node(HttpHost host) {
+            this.host = host;
+        }
+
+        // Unmeasured nodes rank after measured ones but are still used
+        double score() {
+            double latency = latencyMillis;
+            return Double.isNaN(latency) ? Double.MAX_VALUE : latency;
+        }
+
+        synchronized void succeeded(double millis) {
+            double latency = latencyMillis;
+            latencyMillis = Double.isNaN(latency) ? millis : LATENCY_ALPHA * millis + (1 - LATENCY_ALPHA) * latency;
+            if (!healthy) {
+                healthy = true;
+                logger.info("Proxy {} is reachable again ({} ms)", host.toHostString(), Math.round(millis));
+            }
+        }
+
+        synchronized void failed(String reason) {
+            lastFailure = System.currentTimeMillis();
+            failures.incrementAndGet();
+            if (healthy) {
+                healthy = false;
+                logger.warn("Proxy {} marked down: {}", host.toHostString(), reason);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host.toHostString() + "{healthy=" + healthy +
+                    ", latencyMs=" + (Double.isNaN(latencyMillis) ? "n/a" : String.format("%.1f", latencyMillis)) +
+                    ", failures=" + failures.get() +
+                    ", selections=" + selections.get() + "}";
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.MetricsConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation for proxied requests.
+ * <p>
+ * Request and per-scheme attempt latency are timers with percentile histograms; 407 rejections,
+ * scheme fallbacks and received bytes are counters; handshake, TLS, Kerberos, cache and DNS counts are
+ * read from their components, and connection pools are exposed as gauges. The registry is dumped
+ * in Prometheus text format at shutdown when {@code metrics.dump-file} is set.
+ */
+@Component
+public class ProxyMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyMetrics.class);
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_REJECTED = "rejected";
+    public static final String OUTCOME_HTTP_ERROR = "http_error";
+    public static final String OUTCOME_ERROR = "error";
+
+    private final PrometheusMeterRegistry registry;
+    private final MetricsConfig metricsConfig;
+    // Pool currently backing each client name; gauges read through this so rebuilt clients are picked up
+    private final Map<String, ConnPoolControl<?>> pools = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProxyMetrics(PrometheusMeterRegistry registry, MetricsConfig metricsConfig,
+                        ProxyAuthSessionCache authSessionCache, ProxyTlsContext tlsContext,
+                        KerberosCredentialCache kerberosCredentials, ProxyResponseCache responseCache,
+                        CachingDnsResolver dnsResolver) {
+        this.registry = registry;
+        this.metricsConfig = metricsConfig;
+
+        FunctionCounter.builder("proxy.auth.handshakes", authSessionCache, ProxyAuthSessionCache::getHandshakesPerformed)
+                .tag("result", "performed")
+                .description("Connection-based proxy auth handshakes")
+                .register(registry);
+        FunctionCounter.builder("proxy.auth.handshakes", authSessionCache, ProxyAuthSessionCache::getHandshakesAvoided)
+                .tag("result", "avoided")
+                .register(registry);
+        FunctionCounter.builder("proxy.auth.preemptive", authSessionCache, ProxyAuthSessionCache::getPreemptiveSent)
+                .tag("result", "sent")
+                .description("Requests sent with cached Basic/Digest proxy credentials")
+                .register(registry);
+        FunctionCounter.builder("proxy.auth.preemptive", authSessionCache, ProxyAuthSessionCache::getPreemptiveRejected)
+                .tag("result", "rejected")
+                .register(registry);
+        FunctionCounter.builder("proxy.tls.handshakes", tlsContext, ProxyTlsContext::getFullHandshakes)
+                .tag("type", "full")
+                .description("TLS handshakes on new connections")
+                .register(registry);
+        FunctionCounter.builder("proxy.tls.handshakes", tlsContext, ProxyTlsContext::getResumedHandshakes)
+                .tag("type", "resumed")
+                .register(registry);
+        FunctionCounter.builder("proxy.kerberos.logins", kerberosCredentials, KerberosCredentialCache::getLogins)
+                .description("Kerberos logins (AS exchanges) for SPNEGO")
+                .register(registry);
+        FunctionCounter.builder("proxy.kerberos.renewals", kerberosCredentials, KerberosCredentialCache::getRenewals)
+                .tag("result", "success")
+                .register(registry);
+        FunctionCounter.builder("proxy.kerberos.renewals", kerberosCredentials, KerberosCredentialCache::getRenewalFailures)
+                .tag("result", "failure")
+                .register(registry);
+        FunctionCounter.builder("proxy.cache.requests", responseCache, ProxyResponseCache::getHits)
+                .tag("status", "hit")
+                .register(registry);
+        FunctionCounter.builder("proxy.cache.requests", responseCache, ProxyResponseCache::getMisses)
+                .tag("status", "miss")
+                .register(registry);
+        FunctionCounter.builder("proxy.cache.requests", responseCache, ProxyResponseCache::getRevalidations)
+                .tag("status", "revalidated")
+                .register(registry);
+        FunctionCounter.builder("proxy.dns.resolutions", dnsResolver, CachingDnsResolver::getHits)
+                .tag("source", "cache")
+                .description("Host resolutions by the HTTP clients")
+                .register(registry);
+        FunctionCounter.builder("proxy.dns.resolutions", dnsResolver, CachingDnsResolver::getLookups)
+                .tag("source", "lookup")
+                .register(registry);
+        BufferPool buffers = BufferPool.shared();
+        FunctionCounter.builder("proxy.buffers.acquired", buffers, BufferPool::getHits)
+                .tag("source", "pool")
+                .description("I/O buffers taken from the buffer pool or newly allocated")
+                .register(registry);
+        FunctionCounter.builder("proxy.buffers.acquired", buffers, BufferPool::getMisses)
+                .tag("source", "allocated")
+                .register(registry);
+        Gauge.builder("proxy.buffers.outstanding", buffers, BufferPool::getOutstanding)
+                .description("Pooled I/O buffers in use")
+                .register(registry);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Records one attempt with a single auth scheme.
+     */
+    public void recordAttempt(ProxyAuthMode mode, String outcome, Timer.Sample sample) {
+        sample.stop(Timer.builder("proxy.auth.attempt")
+                .description("Latency of one proxied request attempt with a single auth scheme")
+                .tag("scheme", mode.name())
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+        if (OUTCOME_REJECTED.equals(outcome)) {
+            Counter.builder("proxy.auth.rejected")
+                    .description("407 responses per auth scheme")
+                    .tag("scheme", mode.name())
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    /**
+     * Records a whole request, including any fallback between schemes.
+     *
+     * @param mode scheme of the last attempt, or null if none was made
+     */
+    public void recordRequest(ProxyAuthMode mode, String outcome, Timer.Sample sample) {
+        sample.stop(Timer.builder("proxy.request")
+                .description("End-to-end latency of a proxied request including auth fallback")
+                .tag("scheme", mode != null ? mode.name() : "none")
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void recordFallback(ProxyAuthMode from, ProxyAuthMode to) {
+        Counter.builder("proxy.auth.fallbacks")
+                .description("Falls back from a rejected scheme to the next candidate")
+                .tag("from", from.name())
+                .tag("to", to.name())
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Wraps a response entity so the bytes read from it are counted for the scheme.
+     */
+    public HttpEntity countReceived(HttpEntity entity, ProxyAuthMode mode) {
+        if (entity == null) {
+            return null;
+        }
+        Counter counter = Counter.builder("proxy.bytes.received")
+                .description("Response body bytes read through the proxy")
+                .baseUnit("bytes")
+                .tag("scheme", mode.name())
+                .register(registry);
+        return new HttpEntityWrapper(entity) {
+            @Override
+            public InputStream getContent() throws IOException {
+                return new FilterInputStream(super.getContent()) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            counter.increment();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) {
+                            counter.increment(n);
+                        }
+                        return n;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Exposes leased/available/pending/max connections of the pool backing the named client.
+     */
+    public void bindConnectionPool(String client, ConnPoolControl<?> pool) {
+        if (pools.put(client, pool) != null) {
+            return;
+        }
+        registerPoolGauge(client, "leased", PoolStats::getLeased);
+        registerPoolGauge(client, "available", PoolStats::getAvailable);
+        registerPoolGauge(client, "pending", PoolStats::getPending);
+        registerPoolGauge(client, "max", PoolStats::getMax);
+    }
+
+    private void registerPoolGauge(String client, String state, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("proxy.pool.connections", pools, p -> {
+                    ConnPoolControl<?> pool = p.get(client);
+                    return pool != null ? value.applyAsDouble(pool.getTotalStats()) : Double.NaN;
+                })
+                .description("Connection pool state per client")
+                .tag("client", client)
+                .tag("state", state)
+                .register(registry);
+    }
+
+    /**
+     * Classifies a result string of the request methods, see {@link ProxyService#executeRequest(String)}.
+     */
+    static String outcome(String result) {
+        if (result.contains("407 Proxy Authentication Error")) {
+            return OUTCOME_REJECTED;
+        }
+        if (result.startsWith("Error: ")) {
+            return OUTCOME_ERROR;
+        }
+        if (result.startsWith("Request failed with status: ")) {
+            return OUTCOME_HTTP_ERROR;
+        }
+        return OUTCOME_SUCCESS;
+    }
+
+    /**
+     * Returns the registry in Prometheus text format.
+     */
+    public String scrape() {
+        return registry.scrape();
+    }
+
+    @PreDestroy
+    public void dump() {
+        String dumpFile = metricsConfig.getDumpFile();
+        if (dumpFile == null || dumpFile.trim().isEmpty()) {
+            return;
+        }
+        Path path = Paths.get(dumpFile.trim());
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            Path tmp = Files.createTempFile(parent, "metrics", ".tmp");
+            Files.write(tmp, scrape().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Metrics written to [{}]", path);
+        } catch (IOException e) {
+            logger.warn("Failed to write metrics to [{}]: {}", path, e.getMessage());
+        }
+    }
+}
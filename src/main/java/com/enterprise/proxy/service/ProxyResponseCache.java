@@ -0,0 +1,132 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RFC 7234 response cache shared by the proxied clients.
+ * <p>
+ * Cacheable responses are kept in {@link TieredHttpCacheStorage}; stale entries are revalidated
+ * with If-None-Match / If-Modified-Since so an unchanged resource costs a 304 instead of a
+ * full download through the proxy.
+ */
+@Component
+public class ProxyResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyResponseCache.class);
+
+    private final HttpClientConfig.Cache cacheConfig;
+    private TieredHttpCacheStorage storage;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong moduleResponses = new AtomicLong();
+
+    @Autowired
+    public ProxyResponseCache(HttpClientConfig httpClientConfig) {
+        this.cacheConfig = httpClientConfig.getCache();
+    }
+
+    public boolean isEnabled() {
+        return cacheConfig.isEnabled();
+    }
+
+    /**
+     * Returns a client builder that answers from and populates the shared cache.
+     */
+    public HttpClientBuilder newClientBuilder() {
+        CacheConfig config = CacheConfig.custom()
+                .setMaxCacheEntries(cacheConfig.getMaxEntries())
+                .setMaxObjectSize(cacheConfig.getMaxObjectSize())
+                // Private cache: responses fetched with our proxy credentials are not shared
+                .setSharedCache(false)
+                .setHeuristicCachingEnabled(false)
+                .build();
+        return CachingHttpClientBuilder.create()
+                .setCacheConfig(config)
+                .setHttpCacheStorage(storage());
+    }
+
+    /**
+     * Records how the cache handled a request executed with the given context.
+     */
+    public void record(HttpContext context) {
+        if (!isEnabled()) {
+            return;
+        }
+        CacheResponseStatus status = HttpCacheContext.adapt(context).getCacheResponseStatus();
+        if (status == null) {
+            return;
+        }
+        switch (status) {
+            case CACHE_HIT:
+                hits.incrementAndGet();
+                break;
+            case VALIDATED:
+                revalidations.incrementAndGet();
+                break;
+            case CACHE_MISS:
+                misses.incrementAndGet();
+                break;
+            default:
+                moduleResponses.incrementAndGet();
+                break;
+        }
+        logger.debug("Response cache status: {}", status);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    public long getModuleResponses() {
+        return moduleResponses.get();
+    }
+
+    private synchronized TieredHttpCacheStorage storage() {
+        if (storage == null) {
+            try {
+                storage = new TieredHttpCacheStorage(cacheConfig.getMaxEntries(),
+                        cacheConfig.getDiskDir() != null ? Paths.get(cacheConfig.getDiskDir()) : null,
+                        cacheConfig.getDiskMaxBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to initialize response cache storage", e);
+            }
+        }
+        return storage;
+    }
+
+    @Override
+    public String toString() {
+        return "ProxyResponseCache{" +
+                "enabled=" + isEnabled() +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                ", revalidations=" + revalidations.get() +
+                ", moduleResponses=" + moduleResponses.get() +
+                '}';
+    }
+}
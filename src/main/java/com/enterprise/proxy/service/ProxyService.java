@@ -3,57 +3,75 @@ package com.enterprise.proxy.service;
 import com.enterprise.proxy.config.HttpClientConfig;
 import com.enterprise.proxy.config.ProxyConfig;
 import com.enterprise.proxy.config.TargetConfig;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.ProtocolException;
 import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.auth.AuthSchemeProvider;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.auth.BasicSchemeFactory;
+import org.apache.http.impl.auth.DigestSchemeFactory;
 import org.apache.http.impl.auth.NTLMSchemeFactory;
 import org.apache.http.impl.auth.SPNegoSchemeFactory;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.impl.auth.win.WindowsCredentialsProvider;
+import org.apache.http.impl.auth.win.WindowsNTLMSchemeFactory;
+import org.apache.http.impl.auth.win.WindowsNegotiateSchemeFactory;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.ProxyAuthenticationStrategy;
+import org.apache.http.impl.client.SystemDefaultCredentialsProvider;
 import org.apache.http.impl.client.WinHttpClients;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.security.auth.Subject;
-import javax.security.auth.callback.Callback;
-import javax.security.auth.callback.CallbackHandler;
-import javax.security.auth.callback.NameCallback;
-import javax.security.auth.callback.PasswordCallback;
-import javax.security.auth.callback.UnsupportedCallbackException;
-import javax.security.auth.login.AppConfigurationEntry;
-import javax.security.auth.login.AppConfigurationEntry.LoginModuleControlFlag;
-import javax.security.auth.login.Configuration;
-import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.PrivilegedAction;
-import java.security.cert.X509Certificate;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSession;
 
@@ -62,34 +80,128 @@ public class ProxyService {
     
     private static final Logger logger = LoggerFactory.getLogger(ProxyService.class);
     
+    // Default success path: materialize the body as a String
+    private static final BodyHandler TO_STRING = entity -> {
+        String responseBody = EntityStreams.toString(entity);
+        logger.debug("Response body length: {} characters", responseBody.length());
+        return responseBody;
+    };
+    
+    // Context attribute that turns off redirect handling for requests relayed by the local proxy
+    private static final String NO_REDIRECTS = ProxyService.class.getName() + ".noRedirects";
+    
     private final ProxyConfig proxyConfig;
     private final HttpClientConfig httpClientConfig;
     private final TargetConfig targetConfig;
+    private final ProxyAuthSchemeResolver authSchemeResolver;
+    private final ProxyAuthSessionCache authSessionCache;
+    private final ProxyResponseCache responseCache;
+    private final ProxyTlsContext tlsContext;
+    private final KerberosCredentialCache kerberosCredentials;
+    private final ProxyMetrics metrics;
+    private final RequestTimingRecorder timings;
+    private final CachingDnsResolver dnsResolver;
+    private final ProxyEndpointPool endpointPool;
+    private final ProxyAuthRacer authRacer;
+    private final RangedDownloader rangedDownloader;
+    
+    // Long-lived clients, one per auth mode, each backed by its own connection pool
+    private final Map<ProxyAuthMode, CloseableHttpClient> clients = new EnumMap<>(ProxyAuthMode.class);
     
     @Autowired
-    public ProxyService(ProxyConfig proxyConfig, HttpClientConfig httpClientConfig, TargetConfig targetConfig) {
+    public ProxyService(ProxyConfig proxyConfig, HttpClientConfig httpClientConfig, TargetConfig targetConfig,
+                        ProxyAuthSchemeResolver authSchemeResolver, ProxyAuthSessionCache authSessionCache,
+                        ProxyResponseCache responseCache, ProxyTlsContext tlsContext,
+                        KerberosCredentialCache kerberosCredentials, ProxyMetrics metrics,
+                        RequestTimingRecorder timings, CachingDnsResolver dnsResolver,
+                        ProxyEndpointPool endpointPool, ProxyAuthRacer authRacer) {
         this.proxyConfig = proxyConfig;
         this.httpClientConfig = httpClientConfig;
         this.targetConfig = targetConfig;
+        this.authSchemeResolver = authSchemeResolver;
+        this.authSessionCache = authSessionCache;
+        this.responseCache = responseCache;
+        this.tlsContext = tlsContext;
+        this.kerberosCredentials = kerberosCredentials;
+        this.metrics = metrics;
+        this.timings = timings;
+        this.dnsResolver = dnsResolver;
+        this.endpointPool = endpointPool;
+        this.authRacer = authRacer;
+        this.rangedDownloader = new RangedDownloader(request -> send(request, true), httpClientConfig.getDownload());
         
         // Disable SSL certificate validation for testing (remove in production)
         disableSSLVerification();
     }
     
+    @PostConstruct
+    public void initClients() {
+        if (proxyConfig.getHost() == null || proxyConfig.getHost().trim().isEmpty()) {
+            logger.warn("Proxy host not configured; pooled HTTP clients will be created on first use");
+            return;
+        }
+        for (ProxyAuthMode mode : ProxyAuthMode.values()) {
+            client(mode);
+        }
+        logger.info("Pooled HTTP clients initialized (maxTotal={}, maxPerRoute={}, keepAlive={}ms, idleTimeout={}ms)",
+                httpClientConfig.getPool().getMaxTotal(),
+                httpClientConfig.getPool().getMaxPerRoute(),
+                httpClientConfig.getPool().getKeepAlive(),
+                httpClientConfig.getPool().getIdleTimeout());
+    }
+    
+    @PreDestroy
+    public void closeClients() {
+        logger.info("Proxy auth sessions: {}", authSessionCache);
+        logger.info("Response cache: {}", responseCache);
+        logger.info("TLS sessions: {}", tlsContext);
+        logger.info("Kerberos credentials: {}", kerberosCredentials);
+        logger.info("DNS cache: {}", dnsResolver);
+        logger.info("Buffer pool: {}", BufferPool.shared());
+        if (endpointPool.isActive()) {
+            logger.info("Proxy endpoints: {}", endpointPool);
+        }
+        synchronized (clients) {
+            for (Map.Entry<ProxyAuthMode, CloseableHttpClient> entry : clients.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    logger.warn("Error closing {} HTTP client: {}", entry.getKey(), e.getMessage());
+                }
+            }
+            clients.clear();
+        }
+    }
+    
+    private CloseableHttpClient client(ProxyAuthMode mode) {
+        synchronized (clients) {
+            CloseableHttpClient client = clients.get(mode);
+            if (client == null) {
+                client = createClient(mode);
+                clients.put(mode, client);
+            }
+            return client;
+        }
+    }
+    
+    // Builds a new pooled client for the mode; package-private for the client construction benchmark
+    CloseableHttpClient createClient(ProxyAuthMode mode) {
+        switch (mode) {
+            case KERBEROS:
+                return createHttpClientForKerberosProxy();
+            case NEGOTIATE:
+                return createHttpClientForNegotiateProxy();
+            case NTLM:
+                return createHttpClientWithNtlmProxy();
+            default:
+                return createHttpClientWithBasicProxy();
+        }
+    }
+    
     private void disableSSLVerification() {
         try {
-            // Create a trust manager that accepts all certificates (for corporate environments)
-            TrustManager[] trustAllCerts = new TrustManager[]{
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() { return null; }
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) { }
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) { }
-                }
-            };
-            
-            // Install the all-trusting trust manager
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(null, trustAllCerts, new java.security.SecureRandom());
+            // Reuse the shared all-trusting context (for corporate environments)
+            SSLContext sc = tlsContext.getSslContext();
             
             // Create all-trusting host name verifier
             HostnameVerifier allHostsValid = new HostnameVerifier() {
@@ -108,6 +220,194 @@ public class ProxyService {
     }
     
     public String executeRequest(String targetUrl) {
+        return executeRequest(targetUrl, TO_STRING);
+    }
+    
+    /**
+     * Streams the body of a proxied GET to the output stream without buffering it on the heap.
+     * Returns the number of bytes written; auth and HTTP failures are reported as IOException.
+     */
+    public long executeRequestToStream(String targetUrl, OutputStream out) throws IOException {
+        return executeStreaming(targetUrl, entity -> EntityStreams.copy(entity, out));
+    }
+    
+    /**
+     * Streams the body of a proxied GET to the channel, see {@link #executeRequestToStream}.
+     */
+    public long executeRequestToChannel(String targetUrl, WritableByteChannel channel) throws IOException {
+        return executeStreaming(targetUrl, entity -> EntityStreams.copy(entity, channel));
+    }
+    
+    /**
+     * Streams the body of a proxied GET into the file, replacing any existing content.
+     */
+    public long executeRequestToFile(String targetUrl, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return executeRequestToChannel(targetUrl, channel);
+        }
+    }
+    
+    /**
+     * Downloads into the file, replacing any existing content. With {@code http.client.download.parallelism}
+     * above 1, a target that serves byte ranges is fetched over that many connections at once; anything
+     * else is streamed as by {@link #executeRequestToFile}.
+     */
+    public long downloadToFile(String targetUrl, Path file) throws IOException {
+        return downloadToFile(targetUrl, file, null);
+    }
+    
+    /**
+     * As {@link #downloadToFile(String, Path)}; with {@code http.client.download.resume} progress is kept in
+     * a checkpoint next to the file, and a run after a failure or restart resumes with {@code Range} and
+     * {@code If-Range}. The finished file is verified against the checksum ({@code <algorithm>:<hex>}) if
+     * one is given.
+     */
+    public long downloadToFile(String targetUrl, Path file, String checksum) throws IOException {
+        if (targetUrl == null || targetUrl.trim().isEmpty()) {
+            targetUrl = targetConfig.getUrl();
+        }
+        HttpClientConfig.Download download = httpClientConfig.getDownload();
+        long written = -1;
+        if (download.getParallelism() > 1 || download.isResume()) {
+            written = rangedDownloader.download(targetUrl, file, download.isResume());
+            if (written < 0) {
+                logger.info("Downloading {} as a single stream", targetUrl);
+            }
+        }
+        if (written < 0) {
+            written = executeRequestToFile(targetUrl, file);
+        }
+        if (checksum != null && !checksum.isEmpty()) {
+            RangedDownloader.verifyChecksum(file, checksum);
+        }
+        return written;
+    }
+    
+    /**
+     * POSTs the file as the request body and returns the response body. Goes the way of
+     * {@link #forward}, so it reuses proxy connections that are already authenticated. The body is a
+     * {@link FileRegionEntity}: sent with sendfile on plain hops, from a memory mapping on TLS hops.
+     * Auth and HTTP failures are reported as IOException.
+     */
+    public String upload(String targetUrl, Path file, ContentType contentType, Header... headers) throws IOException {
+        HttpPost request = new HttpPost(targetUrl);
+        request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        for (Header header : headers) {
+            request.setHeader(header);
+        }
+        FileRegionEntity entity = new FileRegionEntity(file, contentType);
+        request.setEntity(entity);
+        
+        logger.info("Uploading [{}] ({} bytes) to {}", file, entity.getContentLength(), targetUrl);
+        try (CloseableHttpResponse response = forward(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 407) {
+                logger.error("=== 407 PROXY AUTHENTICATION ERROR (upload) ===");
+                logger.error(minimalAuthInfo(response));
+                consumeQuietly(response.getEntity());
+                throw new IOException("407 Proxy Authentication Error. Check logs for details.");
+            }
+            if (statusCode < 200 || statusCode >= 300) {
+                String msg = minimalFailureMessage(response, statusCode);
+                consumeQuietly(response.getEntity());
+                throw new IOException(msg);
+            }
+            return response.getEntity() != null ? TO_STRING.handle(response.getEntity()) : "";
+        }
+    }
+    
+    /**
+     * Sends a request relayed by the local forwarding proxy through the pooled client of the first
+     * scheme that gets past the proxy, so it reuses connections that are already authenticated.
+     * Redirects are returned rather than followed, and a request with a non-repeatable body gets a
+     * single attempt. The caller must close the response, which may be a final 407.
+     */
+    public CloseableHttpResponse forward(HttpUriRequest request) throws IOException {
+        return send(request, false);
+    }
+    
+    private CloseableHttpResponse send(HttpUriRequest request, boolean followRedirects) throws IOException {
+        String proxyKey = proxyConfig.getHost() + ":" + proxyConfig.getPort();
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest
+                ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        boolean repeatable = entity == null || entity.isRepeatable();
+        Timer.Sample requestSample = metrics.startTimer();
+        List<ProxyAuthMode> candidates = authSchemeResolver.candidates(proxyKey);
+        ProxyAuthMode previous = null;
+        for (int i = 0; ; i++) {
+            ProxyAuthMode mode = candidates.get(i);
+            if (previous != null) {
+                logger.warn("Previous scheme failed, sending with {}...", mode);
+                metrics.recordFallback(previous, mode);
+            }
+            previous = mode;
+            CloseableHttpResponse response;
+            try {
+                response = sendWith(mode, request, repeatable, followRedirects);
+            } catch (IOException e) {
+                metrics.recordRequest(mode, ProxyMetrics.OUTCOME_ERROR, requestSample);
+                throw e;
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != 407) {
+                authSchemeResolver.recordSuccess(proxyKey, mode);
+                metrics.recordRequest(mode, statusCode < 400 ? ProxyMetrics.OUTCOME_SUCCESS
+                        : ProxyMetrics.OUTCOME_HTTP_ERROR, requestSample);
+                return response;
+            }
+            authSchemeResolver.recordFailure(proxyKey, mode);
+            if (i == candidates.size() - 1 || !repeatable) {
+                metrics.recordRequest(mode, ProxyMetrics.OUTCOME_REJECTED, requestSample);
+                return response;
+            }
+            consumeQuietly(response.getEntity());
+            response.close();
+        }
+    }
+    
+    private CloseableHttpResponse sendWith(ProxyAuthMode mode, HttpUriRequest request, boolean repeatable,
+                                           boolean followRedirects) throws IOException {
+        int retries = repeatable ? endpointPool.size() - 1 : 0;
+        while (true) {
+            String session = sessionIdentity(mode);
+            HttpClientContext context = authSessionCache.newContext(session);
+            if (!followRedirects) {
+                context.setAttribute(NO_REDIRECTS, Boolean.TRUE);
+            }
+            endpointPool.takeConnectFailure();
+            try {
+                CloseableHttpResponse response = client(mode).execute(request, context);
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (mode != ProxyAuthMode.BASIC) {
+                    authSessionCache.onResponse(session, context, statusCode);
+                }
+                responseCache.record(context);
+                return response;
+            } catch (IOException e) {
+                endpointPool.requestFailed(e);
+                if (retries-- <= 0 || !endpointPool.takeConnectFailure()) {
+                    throw e;
+                }
+                logger.warn("Proxy node unreachable, retrying {} {} request on another node", mode, request.getMethod());
+            }
+        }
+    }
+    
+    private long executeStreaming(String targetUrl, EntityWriter writer) throws IOException {
+        long[] written = {-1};
+        String result = executeRequest(targetUrl, entity -> {
+            written[0] = writer.write(entity);
+            return "";
+        });
+        if (written[0] < 0) {
+            // Body was never (completely) written: result carries the failure message
+            throw new IOException(result);
+        }
+        return written[0];
+    }
+    
+    private String executeRequest(String targetUrl, BodyHandler bodyHandler) {
         if (targetUrl == null || targetUrl.trim().isEmpty()) {
             targetUrl = targetConfig.getUrl();
         }
@@ -164,39 +464,141 @@ public class ProxyService {
             logger.warn("Could not analyze password encoding: {}", e.getMessage());
         }
         
-        // Try Kerberos first (like PowerShell), then NTLM, then Basic
-        String result = executeRequestWithKerberos(targetUrl);
-        if (result.contains("407 Proxy Authentication Error")) {
-            logger.warn("Kerberos failed, trying NTLM...");
-            result = executeRequestWithNtlm(targetUrl);
-            if (result.contains("407 Proxy Authentication Error")) {
-                logger.warn("NTLM failed, trying Basic...");
-                result = executeRequestWithBasic(targetUrl);
+        // Kerberos first (like PowerShell), then NTLM, then Basic - unless a scheme is already known to work
+        String proxyKey = proxyConfig.getHost() + ":" + proxyConfig.getPort();
+        String result = null;
+        ProxyAuthMode previous = null;
+        Timer.Sample requestSample = metrics.startTimer();
+        List<ProxyAuthMode> candidates = authSchemeResolver.candidates(proxyKey);
+        if (proxyConfig.getAuth().isRace() && candidates.size() > 1 && !authSchemeResolver.isResolved(proxyKey)) {
+            return executeRace(proxyKey, candidates, targetUrl, bodyHandler, requestSample);
+        }
+        timings.begin(targetUrl);
+        for (ProxyAuthMode mode : candidates) {
+            if (previous != null) {
+                logger.warn("Previous scheme failed, trying {}...", mode);
+                metrics.recordFallback(previous, mode);
             }
+            previous = mode;
+            timings.attempt(mode);
+            Timer.Sample attemptSample = metrics.startTimer();
+            result = executeWithFailover(mode, targetUrl, entity -> {
+                try {
+                    return bodyHandler.handle(metrics.countReceived(entity, mode));
+                } finally {
+                    timings.bodyRead();
+                }
+            });
+            String outcome = ProxyMetrics.outcome(result);
+            metrics.recordAttempt(mode, outcome, attemptSample);
+            if (!ProxyMetrics.OUTCOME_REJECTED.equals(outcome)) {
+                // Transport errors say nothing about the scheme; anything else got past the proxy
+                if (!ProxyMetrics.OUTCOME_ERROR.equals(outcome)) {
+                    authSchemeResolver.recordSuccess(proxyKey, mode);
+                }
+                metrics.recordRequest(mode, outcome, requestSample);
+                timings.end(outcome);
+                return result;
+            }
+            authSchemeResolver.recordFailure(proxyKey, mode);
         }
         
+        String outcome = result != null ? ProxyMetrics.outcome(result) : ProxyMetrics.OUTCOME_ERROR;
+        metrics.recordRequest(previous, outcome, requestSample);
+        timings.end(outcome);
+        return result;
+    }
+    
+    // Cold start: race the schemes instead of waiting for each to fail in turn. Raced requests get no
+    // timing record, as their attempts overlap on other threads.
+    private String executeRace(String proxyKey, List<ProxyAuthMode> candidates, String targetUrl,
+                               BodyHandler bodyHandler, Timer.Sample requestSample) {
+        Map<ProxyAuthMode, String> outcomes = new ConcurrentHashMap<>();
+        ProxyAuthRacer.Attempt winner = authRacer.race(candidates, (mode, attempt) -> {
+            Timer.Sample attemptSample = metrics.startTimer();
+            String result = executeWithFailover(mode, targetUrl, entity -> {
+                // Only one attempt may write the body
+                if (!attempt.claim()) {
+                    throw new IOException("Lost the auth scheme race to another scheme");
+                }
+                return bodyHandler.handle(metrics.countReceived(entity, mode));
+            });
+            String outcome = ProxyMetrics.outcome(result);
+            outcomes.put(mode, outcome);
+            metrics.recordAttempt(mode, outcome, attemptSample);
+            if (ProxyMetrics.OUTCOME_REJECTED.equals(outcome)) {
+                authSchemeResolver.recordFailure(proxyKey, mode);
+            }
+            return result;
+        });
+        // Count the fallbacks the sequential path would have made: past each rejected scheme ahead of the winner
+        ProxyAuthMode previous = null;
+        for (ProxyAuthMode mode : candidates) {
+            if (previous != null) {
+                metrics.recordFallback(previous, mode);
+            }
+            if (mode == winner.mode || !ProxyMetrics.OUTCOME_REJECTED.equals(outcomes.get(mode))) {
+                break;
+            }
+            previous = mode;
+        }
+        String result = winner.result();
+        String outcome = ProxyMetrics.outcome(result);
+        if (!ProxyMetrics.OUTCOME_REJECTED.equals(outcome) && !ProxyMetrics.OUTCOME_ERROR.equals(outcome)) {
+            authSchemeResolver.recordSuccess(proxyKey, winner.mode);
+        }
+        metrics.recordRequest(winner.mode, outcome, requestSample);
         return result;
     }
     
-    private String executeRequestWithNtlm(String targetUrl) {
+    // A proxy node that fails the connect is marked down at once, so the retry goes to the next node
+    private String executeWithFailover(ProxyAuthMode mode, String targetUrl, BodyHandler bodyHandler) {
+        int retries = endpointPool.size() - 1;
+        while (true) {
+            endpointPool.takeConnectFailure();
+            String result = executeRequestWith(mode, targetUrl, bodyHandler);
+            if (retries-- <= 0 || !endpointPool.takeConnectFailure()
+                    || !ProxyMetrics.OUTCOME_ERROR.equals(ProxyMetrics.outcome(result))) {
+                return result;
+            }
+            logger.warn("Proxy node unreachable, retrying {} request on another node", mode);
+        }
+    }
+    
+    private String executeRequestWith(ProxyAuthMode mode, String targetUrl, BodyHandler bodyHandler) {
+        switch (mode) {
+            case KERBEROS:
+                return executeRequestWithKerberos(targetUrl, bodyHandler);
+            case NTLM:
+                return executeRequestWithNtlm(targetUrl, bodyHandler);
+            case BASIC:
+                return executeRequestWithBasic(targetUrl, bodyHandler);
+            default:
+                throw new IllegalArgumentException("Unsupported proxy auth mode: " + mode);
+        }
+    }
+    
+    private String executeRequestWithNtlm(String targetUrl, BodyHandler bodyHandler) {
         boolean enableNegotiate = Boolean.parseBoolean(System.getProperty("proxy.enable.negotiate", "false"));
         if (enableNegotiate) {
             // Try SPNEGO with configured credentials first (no interactive prompt)
-            String spnegoResult = trySpnegoWithSuppliedCredentials(targetUrl);
+            String spnegoResult = trySpnegoWithSuppliedCredentials(targetUrl, bodyHandler);
             if (spnegoResult != null) {
                 return spnegoResult;
             }
         }
         
-        CloseableHttpClient httpClient = createHttpClientWithNtlmProxy();
+        HttpGet request = new HttpGet(targetUrl);
+        request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        ProxyAuthRacer.track(request);
         
-        try {
-            HttpGet request = new HttpGet(targetUrl);
-            request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-            
-            logger.info("Executing request with NTLM authentication");
-            HttpResponse response = httpClient.execute(request);
+        logger.info("Executing request with NTLM authentication");
+        String session = sessionIdentity(ProxyAuthMode.NTLM);
+        HttpClientContext context = authSessionCache.newContext(session);
+        try (CloseableHttpResponse response = client(ProxyAuthMode.NTLM).execute(request, context)) {
             int statusCode = response.getStatusLine().getStatusCode();
+            authSessionCache.onResponse(session, context, statusCode);
+            responseCache.record(context);
             
             logger.info("NTLM Response status: {}", statusCode);
             
@@ -208,8 +610,7 @@ public class ProxyService {
             }
             
             if (statusCode >= 200 && statusCode < 300) {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                logger.debug("Response body length: {} characters", responseBody.length());
+                String responseBody = bodyHandler.handle(response.getEntity());
                 logger.info("NTLM authentication successful!");
                 return responseBody;
             } else {
@@ -220,18 +621,11 @@ public class ProxyService {
             }
             
         } catch (IOException e) {
-            logger.error("Error executing NTLM request: {}", e.getMessage(), e);
-            return "Error: " + e.getMessage();
-        } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                logger.warn("Error closing HTTP client: {}", e.getMessage());
-            }
+            return requestError("NTLM", e);
         }
     }
 
-    private String trySpnegoWithSuppliedCredentials(String targetUrl) {
+    private String trySpnegoWithSuppliedCredentials(String targetUrl, BodyHandler bodyHandler) {
         try {
             String user = proxyConfig.getUsername();
             String pass = proxyConfig.getPassword();
@@ -239,19 +633,20 @@ public class ProxyService {
                 logger.info("SPNEGO: no configured credentials found, skipping supplied-cred attempt");
                 return null;
             }
-            // For DOMAIN\\user, JAAS expects user@REALM or just user; here we pass as is via callback
-            LoginContext lc = new LoginContext("spnego", null, new SimpleCredCallback(user, pass), new SpnegoLoginConfig());
-            lc.login();
-            Subject subject = lc.getSubject();
-            logger.info("SPNEGO: obtained Subject via configured credentials; attempting HTTP under Subject.doAs");
+            // Cached login: the KDC is only contacted when there is no valid TGT
+            Subject subject = kerberosCredentials.getSubject();
+            logger.debug("SPNEGO: using cached Kerberos Subject; attempting HTTP under Subject.doAs");
             
             return Subject.doAs(subject, (PrivilegedAction<String>) () -> {
-                CloseableHttpClient client = createHttpClientForNegotiateProxy();
-                try {
-                    HttpGet req = new HttpGet(targetUrl);
-                    req.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-                    HttpResponse resp = client.execute(req);
+                HttpGet req = new HttpGet(targetUrl);
+                req.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+                ProxyAuthRacer.track(req);
+                String session = sessionIdentity(ProxyAuthMode.NEGOTIATE);
+                HttpClientContext context = authSessionCache.newContext(session);
+                try (CloseableHttpResponse resp = client(ProxyAuthMode.NEGOTIATE).execute(req, context)) {
                     int sc = resp.getStatusLine().getStatusCode();
+                    authSessionCache.onResponse(session, context, sc);
+                    responseCache.record(context);
                     if (sc == 407) {
                         logger.error("SPNEGO supplied-cred attempt got 407; {}", minimalAuthInfo(resp));
                         consumeQuietly(resp.getEntity());
@@ -259,7 +654,7 @@ public class ProxyService {
                     }
                     if (sc >= 200 && sc < 300) {
                         try {
-                            return EntityUtils.toString(resp.getEntity());
+                            return bodyHandler.handle(resp.getEntity());
                         } catch (IOException e) {
                             return "Error: " + e.getMessage();
                         }
@@ -269,8 +664,6 @@ public class ProxyService {
                     return msg;
                 } catch (IOException e) {
                     return "Error: " + e.getMessage();
-                } finally {
-                    try { client.close(); } catch (IOException ignore) {}
                 }
             });
         } catch (LoginException e) {
@@ -279,51 +672,16 @@ public class ProxyService {
         }
     }
 
-    private static class SimpleCredCallback implements CallbackHandler {
-        private final String username;
-        private final String password;
-        SimpleCredCallback(String username, String password) {
-            this.username = username;
-            this.password = password;
-        }
-        @Override
-        public void handle(Callback[] callbacks) throws UnsupportedCallbackException {
-            for (Callback cb : callbacks) {
-                if (cb instanceof NameCallback) {
-                    ((NameCallback) cb).setName(username);
-                } else if (cb instanceof PasswordCallback) {
-                    ((PasswordCallback) cb).setPassword(password.toCharArray());
-                } else {
-                    throw new UnsupportedCallbackException(cb);
-                }
-            }
-        }
-    }
-
-    private static class SpnegoLoginConfig extends Configuration {
-        @Override
-        public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
-            Map<String, String> options = new HashMap<>();
-            options.put("useTicketCache", "false");
-            options.put("storeKey", "false");
-            options.put("doNotPrompt", "true");
-            options.put("refreshKrb5Config", "true");
-            options.put("isInitiator", "true");
-            // Allow username/password from CallbackHandler
-            options.put("useKeyTab", "false");
-            options.put("tryFirstPass", "true");
-            options.put("useFirstPass", "true");
-            // On Windows, this still goes through SSPI
-            return new AppConfigurationEntry[]{
-                    new AppConfigurationEntry(
-                            "com.sun.security.auth.module.Krb5LoginModule",
-                            LoginModuleControlFlag.REQUIRED,
-                            options
-                    )
-            };
-        }
+    // Turns a successful response entity into the request result
+    private interface BodyHandler {
+        String handle(HttpEntity entity) throws IOException;
     }
     
+    // Writes a successful response entity to a sink, returning the byte count
+    private interface EntityWriter {
+        long write(HttpEntity entity) throws IOException;
+    }
+
     private String executeRequestWithNtlmEmptyDomain(String targetUrl) {
         CloseableHttpClient httpClient = createHttpClientWithNtlmProxyUsing("", "");
         
@@ -345,7 +703,7 @@ public class ProxyService {
             }
             
             if (statusCode >= 200 && statusCode < 300) {
-                String responseBody = EntityUtils.toString(response.getEntity());
+                String responseBody = EntityStreams.toString(response.getEntity());
                 logger.debug("Response body length: {} characters", responseBody.length());
                 logger.info("NTLM (empty domain) authentication successful!");
                 return responseBody;
@@ -361,25 +719,25 @@ public class ProxyService {
         }
     }
     
-    private String executeRequestWithBasic(String targetUrl) {
-        CloseableHttpClient httpClient = createHttpClientWithBasicProxy();
+    private String executeRequestWithBasic(String targetUrl, BodyHandler bodyHandler) {
+        HttpGet request = new HttpGet(targetUrl);
+        request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        ProxyAuthRacer.track(request);
         
-        try {
-            HttpGet request = new HttpGet(targetUrl);
-            request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-            
-            // Allow overriding Basic username with BBS alias via system property
-            String basicUserOverride = System.getProperty("proxy.basic.username");
-            String effectiveUser = basicUserOverride != null && !basicUserOverride.isEmpty()
-                    ? basicUserOverride
-                    : proxyConfig.getUsername();
-            if (basicUserOverride != null) {
-                logger.info("Using Basic username override (BBS alias): [{}]", effectiveUser);
-            }
-            
-            logger.info("Executing request with Basic authentication");
-            HttpResponse response = httpClient.execute(request);
+        // Allow overriding Basic username with BBS alias via system property
+        String basicUserOverride = System.getProperty("proxy.basic.username");
+        String effectiveUser = basicUserOverride != null && !basicUserOverride.isEmpty()
+                ? basicUserOverride
+                : proxyConfig.getUsername();
+        if (basicUserOverride != null) {
+            logger.info("Using Basic username override (BBS alias): [{}]", effectiveUser);
+        }
+        
+        logger.info("Executing request with Basic authentication");
+        HttpClientContext context = authSessionCache.newContext(sessionIdentity(ProxyAuthMode.BASIC));
+        try (CloseableHttpResponse response = client(ProxyAuthMode.BASIC).execute(request, context)) {
             int statusCode = response.getStatusLine().getStatusCode();
+            responseCache.record(context);
             
             logger.info("Basic Response status: {}", statusCode);
             
@@ -391,8 +749,7 @@ public class ProxyService {
             }
             
             if (statusCode >= 200 && statusCode < 300) {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                logger.debug("Response body length: {} characters", responseBody.length());
+                String responseBody = bodyHandler.handle(response.getEntity());
                 logger.info("Basic authentication successful!");
                 return responseBody;
             } else {
@@ -403,25 +760,34 @@ public class ProxyService {
             }
             
         } catch (IOException e) {
-            logger.error("Error executing Basic request: {}", e.getMessage(), e);
-            return "Error: " + e.getMessage();
-        } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                logger.warn("Error closing HTTP client: {}", e.getMessage());
-            }
+            return requestError("Basic", e);
         }
     }
 
-    private String minimalAuthInfo(HttpResponse response) {
+    // Attempts aborted by the auth scheme race are expected and not reported as errors
+    private String requestError(String scheme, IOException e) {
+        if (ProxyAuthRacer.isCancelled()) {
+            logger.debug("{} request cancelled by the auth scheme race: {}", scheme, e.getMessage());
+        } else {
+            logger.error("Error executing {} request: {}", scheme, e.getMessage(), e);
+            endpointPool.requestFailed(e);
+        }
+        return "Error: " + e.getMessage();
+    }
+
+    // Connection-based schemes authenticate the connection for one identity on one proxy
+    private String sessionIdentity(ProxyAuthMode mode) {
+        return mode + ":" + proxyConfig.getUsername() + "@" + proxyConfig.getHost() + ":" + proxyConfig.getPort();
+    }
+
+    static String minimalAuthInfo(HttpResponse response) {
         String proxySchemes = Arrays.stream(response.getHeaders("Proxy-Authenticate"))
                 .map(h -> h.getValue())
                 .collect(Collectors.joining(", "));
         return "Proxy-Authenticate: [" + proxySchemes + "]";
     }
 
-    private String minimalFailureMessage(HttpResponse response, int statusCode) {
+    static String minimalFailureMessage(HttpResponse response, int statusCode) {
         String proxySchemes = Arrays.stream(response.getHeaders("Proxy-Authenticate"))
                 .map(h -> h.getValue())
                 .collect(Collectors.joining(", "));
@@ -431,7 +797,7 @@ public class ProxyService {
     private void consumeQuietly(HttpEntity entity) {
         try {
             if (entity != null) {
-                EntityUtils.consume(entity);
+                EntityStreams.consume(entity);
             }
         } catch (Exception ignore) {}
     }
@@ -494,40 +860,27 @@ public class ProxyService {
 
         // Set up credentials provider with proper AuthScope
         CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-        credentialsProvider.setCredentials(new AuthScope(proxyHost, proxyPort), basicCredentials);
+        setProxyCredentials(credentialsProvider, basicCredentials);
 
         // Configure request with proxy and Basic authentication
         RequestConfig config = RequestConfig.custom()
                 .setProxy(proxy)
                 .setConnectTimeout(30000)
                 .setSocketTimeout(30000)
-                .setProxyPreferredAuthSchemes(Arrays.asList(AuthSchemes.BASIC))
+                .setProxyPreferredAuthSchemes(Arrays.asList(AuthSchemes.BASIC, AuthSchemes.DIGEST))
                 .setAuthenticationEnabled(true)
                 .build();
 
-        // Create SSL context that trusts all certificates
-        SSLConnectionSocketFactory sslSocketFactory = null;
-        try {
-            SSLContext sslContext = SSLContextBuilder.create()
-                .loadTrustMaterial(null, (certificate, authType) -> true)
-                .build();
-            sslSocketFactory = new SSLConnectionSocketFactory(
-                sslContext, NoopHostnameVerifier.INSTANCE);
-        } catch (Exception e) {
-            logger.warn("Failed to create SSL context for Basic auth: {}", e.getMessage());
-        }
+        // Send the credentials with the first request to each node instead of after its 407
+        authSessionCache.primeBasic(sessionIdentity(ProxyAuthMode.BASIC), endpointPool.endpoints());
 
         // Create HttpClient with Basic support and authentication strategy
-        HttpClientBuilder builder = HttpClientBuilder.create()
+        HttpClientBuilder builder = newClientBuilder()
                 .setDefaultCredentialsProvider(credentialsProvider)
                 .setDefaultRequestConfig(config)
-                .setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
+                .setProxyAuthenticationStrategy(timings.proxyAuthenticationStrategy());
         
-        if (sslSocketFactory != null) {
-            builder.setSSLSocketFactory(sslSocketFactory);
-        }
-        
-        return builder.build();
+        return applyPooling(builder, ProxyAuthMode.BASIC).build();
     }
 
     private CloseableHttpClient createHttpClientWithNtlmProxyUsing(String domain, String workstation) {
@@ -563,7 +916,7 @@ public class ProxyService {
         
         // Set up credentials provider with proper AuthScope
         CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-        credentialsProvider.setCredentials(new AuthScope(proxyHost, proxyPort), ntCredentials);
+        setProxyCredentials(credentialsProvider, ntCredentials);
         
         // Prefer NTLM then Basic by default; Negotiate can be enabled if required
         RequestConfig config = RequestConfig.custom()
@@ -587,42 +940,104 @@ public class ProxyService {
         }
         Registry<AuthSchemeProvider> authRegistry = regBuilder.build();
         
-        // Create SSL context that trusts all certificates
-        SSLContext sslContext;
-        SSLConnectionSocketFactory sslSocketFactory;
-        try {
-            sslContext = SSLContextBuilder.create()
-                .loadTrustMaterial(null, (certificate, authType) -> true)
-                .build();
-            sslSocketFactory = new SSLConnectionSocketFactory(
-                sslContext, NoopHostnameVerifier.INSTANCE);
-        } catch (Exception e) {
-            logger.warn("Failed to create SSL context, using default: {}", e.getMessage());
-            sslContext = null;
-            sslSocketFactory = null;
-        }
-
         HttpClientBuilder builder;
         if (WinHttpClients.isWinAuthAvailable()) {
             logger.info("Using Windows native SSPI for NTLM (WinHttpClients)");
-            builder = WinHttpClients.custom();
+            builder = winClientBuilder();
         } else {
             logger.info("Windows SSPI not available, using standard HttpClient");
-            builder = HttpClientBuilder.create();
-        }
-        
-        // Add SSL configuration if available
-        if (sslSocketFactory != null) {
-            builder.setSSLSocketFactory(sslSocketFactory);
-            logger.info("SSL certificate verification disabled for HTTPS requests");
+            builder = newClientBuilder();
         }
         
-        return builder
+        return applyPooling(builder, ProxyAuthMode.NTLM)
                 .setDefaultAuthSchemeRegistry(authRegistry)
                 .setDefaultCredentialsProvider(credentialsProvider)
                 .setDefaultRequestConfig(config)
-                .setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy())
+                .setProxyAuthenticationStrategy(timings.proxyAuthenticationStrategy())
+                .build();
+    }
+
+    // The same credentials are valid on every proxy node
+    private void setProxyCredentials(CredentialsProvider credentialsProvider, Credentials credentials) {
+        for (HttpHost endpoint : endpointPool.endpoints()) {
+            credentialsProvider.setCredentials(new AuthScope(endpoint.getHostName(), endpoint.getPort()), credentials);
+        }
+    }
+    
+    // Plain builder, or a caching one when the response cache is enabled
+    private HttpClientBuilder newClientBuilder() {
+        return responseCache.isEnabled() ? responseCache.newClientBuilder() : HttpClientBuilder.create();
+    }
+    
+    // Same defaults as WinHttpClients.custom(), applied on top of newClientBuilder()
+    private HttpClientBuilder winClientBuilder() {
+        if (!responseCache.isEnabled()) {
+            return WinHttpClients.custom();
+        }
+        Registry<AuthSchemeProvider> winRegistry = RegistryBuilder.<AuthSchemeProvider>create()
+                .register(AuthSchemes.BASIC, new BasicSchemeFactory())
+                .register(AuthSchemes.DIGEST, new DigestSchemeFactory())
+                .register(AuthSchemes.NTLM, new WindowsNTLMSchemeFactory(null))
+                .register(AuthSchemes.SPNEGO, new WindowsNegotiateSchemeFactory(null))
+                .build();
+        return newClientBuilder()
+                .setDefaultCredentialsProvider(new WindowsCredentialsProvider(new SystemDefaultCredentialsProvider()))
+                .setDefaultAuthSchemeRegistry(winRegistry);
+    }
+    
+    private HttpClientBuilder applyPooling(HttpClientBuilder builder, ProxyAuthMode mode) {
+        HttpClientConfig.Pool pool = httpClientConfig.getPool();
+        // The connection manager owns socket factories; all of them share one TLS session cache
+        boolean zeroCopy = httpClientConfig.getUpload().isZeroCopy();
+        ConnectionSocketFactory plainSocketFactory = zeroCopy
+                ? FileRegionEntity.socketFactory() : PlainConnectionSocketFactory.getSocketFactory();
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", timings.socketFactory(endpointPool.socketFactory(plainSocketFactory)))
+                .register("https", timings.socketFactory(endpointPool.socketFactory(tlsContext.getSocketFactory())))
                 .build();
+        
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                socketFactoryRegistry, timings.dnsResolver(dnsResolver));
+        connectionManager.setMaxTotal(pool.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(pool.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(pool.getValidateAfterInactivity());
+        metrics.bindConnectionPool(mode.name(), connectionManager);
+        
+        HttpRoutePlanner routePlanner = endpointPool.routePlanner();
+        if (routePlanner != null) {
+            builder.setRoutePlanner(routePlanner);
+        }
+        if (zeroCopy) {
+            builder.setRequestExecutor(FileRegionEntity.requestExecutor());
+        }
+        HttpResponseInterceptor healthInterceptor = endpointPool.responseInterceptor();
+        if (healthInterceptor != null) {
+            builder.addInterceptorLast(healthInterceptor);
+        }
+        HttpResponseInterceptor timingInterceptor = timings.responseInterceptor();
+        if (timingInterceptor != null) {
+            builder.addInterceptorLast(timingInterceptor);
+        }
+        return builder
+                .setRedirectStrategy(new DefaultRedirectStrategy() {
+                    @Override
+                    public boolean isRedirected(HttpRequest request, HttpResponse response, HttpContext context)
+                            throws ProtocolException {
+                        return context.getAttribute(NO_REDIRECTS) == null && super.isRedirected(request, response, context);
+                    }
+                })
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy(pool.getKeepAlive()))
+                .evictExpiredConnections()
+                .evictIdleConnections(pool.getIdleTimeout(), TimeUnit.MILLISECONDS);
+    }
+    
+    private ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+        return (response, context) -> {
+            // Honour the server's Keep-Alive header, fall back to the configured duration
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+        };
     }
 
     private CloseableHttpClient createHttpClientForNegotiateProxy() {
@@ -648,16 +1063,16 @@ public class ProxyService {
         HttpClientBuilder builder;
         if (WinHttpClients.isWinAuthAvailable()) {
             logger.info("Using Windows native SSPI for Negotiate/NTLM (WinHttpClients)");
-            builder = WinHttpClients.custom();
+            builder = winClientBuilder();
         } else {
             logger.info("Windows SSPI not available, using standard HttpClient");
-            builder = HttpClientBuilder.create();
+            builder = newClientBuilder();
         }
         
-        return builder
+        return applyPooling(builder, ProxyAuthMode.NEGOTIATE)
                 .setDefaultAuthSchemeRegistry(authRegistry)
                 .setDefaultRequestConfig(config)
-                .setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy())
+                .setProxyAuthenticationStrategy(timings.proxyAuthenticationStrategy())
                 .build();
     }
 
@@ -684,29 +1099,31 @@ public class ProxyService {
         HttpClientBuilder builder;
         if (WinHttpClients.isWinAuthAvailable()) {
             logger.info("Using Windows native SSPI for Kerberos/NTLM (WinHttpClients)");
-            builder = WinHttpClients.custom();
+            builder = winClientBuilder();
         } else {
             logger.info("Windows SSPI not available, using standard HttpClient");
-            builder = HttpClientBuilder.create();
+            builder = newClientBuilder();
         }
         
-        return builder
+        return applyPooling(builder, ProxyAuthMode.KERBEROS)
                 .setDefaultAuthSchemeRegistry(authRegistry)
                 .setDefaultRequestConfig(config)
-                .setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy())
+                .setProxyAuthenticationStrategy(timings.proxyAuthenticationStrategy())
                 .build();
     }
 
-    private String executeRequestWithKerberos(String targetUrl) {
-        CloseableHttpClient httpClient = createHttpClientForKerberosProxy();
+    private String executeRequestWithKerberos(String targetUrl, BodyHandler bodyHandler) {
+        HttpGet request = new HttpGet(targetUrl);
+        request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        ProxyAuthRacer.track(request);
         
-        try {
-            HttpGet request = new HttpGet(targetUrl);
-            request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-            
-            logger.info("Executing request with Kerberos (Negotiate) authentication");
-            HttpResponse response = httpClient.execute(request);
+        logger.info("Executing request with Kerberos (Negotiate) authentication");
+        String session = sessionIdentity(ProxyAuthMode.KERBEROS);
+        HttpClientContext context = authSessionCache.newContext(session);
+        try (CloseableHttpResponse response = client(ProxyAuthMode.KERBEROS).execute(request, context)) {
             int statusCode = response.getStatusLine().getStatusCode();
+            authSessionCache.onResponse(session, context, statusCode);
+            responseCache.record(context);
             
             logger.info("Kerberos Response status: {}", statusCode);
             
@@ -718,8 +1135,7 @@ public class ProxyService {
             }
             
             if (statusCode >= 200 && statusCode < 300) {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                logger.debug("Response body length: {} characters", responseBody.length());
+                String responseBody = bodyHandler.handle(response.getEntity());
                 logger.info("Kerberos authentication successful!");
                 return responseBody;
             } else {
@@ -730,14 +1146,7 @@ public class ProxyService {
             }
             
         } catch (IOException e) {
-            logger.error("Error executing Kerberos request: {}", e.getMessage(), e);
-            return "Error: " + e.getMessage();
-        } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                logger.warn("Error closing HTTP client: {}", e.getMessage());
-            }
+            return requestError("Kerberos", e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.reactor.ssl.SSLIOSession;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.ssl.SSLContexts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TLS layer shared by every proxied client.
+ * <p>
+ * The SSLContext is built once so all clients share its client session cache: a new connection
+ * to a host we have already talked to offers the cached session and gets an abbreviated
+ * handshake instead of a full one through the intercepting proxy. Full and resumed handshakes
+ * are counted so the resumption rate can be checked.
+ */
+@Component
+public class ProxyTlsContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyTlsContext.class);
+
+    private static final String CONNECT_STARTED_ATTRIBUTE = "proxy.tls.connect.started";
+
+    private final SSLContext sslContext;
+    private final SSLConnectionSocketFactory socketFactory;
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    @Autowired
+    public ProxyTlsContext(HttpClientConfig httpClientConfig) {
+        HttpClientConfig.Tls tls = httpClientConfig.getTls();
+        this.sslContext = createSslContext();
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(tls.getSessionCacheSize());
+        sessionContext.setSessionTimeout(tls.getSessionTimeout());
+        this.socketFactory = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE) {
+            @Override
+            protected void prepareSocket(SSLSocket socket) {
+                long connectStarted = System.currentTimeMillis();
+                socket.addHandshakeCompletedListener(event -> recordHandshake(event.getSession(), connectStarted));
+            }
+        };
+        logger.info("Shared TLS context initialized (sessionCacheSize={}, sessionTimeout={}s)",
+                tls.getSessionCacheSize(), tls.getSessionTimeout());
+    }
+
+    // Trusts all certificates, as the corporate proxy re-signs HTTPS traffic
+    private static SSLContext createSslContext() {
+        try {
+            return SSLContextBuilder.create()
+                    .loadTrustMaterial(null, (certificate, authType) -> true)
+                    .build();
+        } catch (Exception e) {
+            logger.warn("Failed to create trust-all SSL context, using default: {}", e.getMessage());
+            return SSLContexts.createDefault();
+        }
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Socket factory for the blocking clients; one instance is shared by every connection manager.
+     */
+    public SSLConnectionSocketFactory getSocketFactory() {
+        return socketFactory;
+    }
+
+    /**
+     * Session strategy for the async clients, backed by the same context and session cache.
+     */
+    public SSLIOSessionStrategy newIOSessionStrategy() {
+        return new SSLIOSessionStrategy(sslContext, NoopHostnameVerifier.INSTANCE) {
+            @Override
+            public SSLIOSession upgrade(HttpHost host, IOSession iosession) throws IOException {
+                iosession.setAttribute(CONNECT_STARTED_ATTRIBUTE, System.currentTimeMillis());
+                return super.upgrade(host, iosession);
+            }
+
+            @Override
+            protected void verifySession(HttpHost host, IOSession iosession, SSLSession sslsession) throws SSLException {
+                super.verifySession(host, iosession, sslsession);
+                Object connectStarted = iosession.getAttribute(CONNECT_STARTED_ATTRIBUTE);
+                recordHandshake(sslsession, connectStarted instanceof Long ? (Long) connectStarted : Long.MAX_VALUE);
+            }
+        };
+    }
+
+    // A resumed session was created by an earlier handshake, before this connection started
+    private void recordHandshake(SSLSession session, long connectStarted) {
+        if (session.getCreationTime() < connectStarted) {
+            resumedHandshakes.incrementAndGet();
+            logger.debug("TLS session resumed with {}:{} ({})", session.getPeerHost(), session.getPeerPort(), session.getProtocol());
+        } else {
+            fullHandshakes.incrementAndGet();
+            logger.debug("Full TLS handshake with {}:{} ({})", session.getPeerHost(), session.getPeerPort(), session.getProtocol());
+        }
+    }
+
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Fraction of handshakes that resumed a cached session, or 0 before the first handshake.
+     */
+    public double getResumptionRate() {
+        long resumed = resumedHandshakes.get();
+        long total = resumed + fullHandshakes.get();
+        return total == 0 ? 0 : (double) resumed / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ProxyTlsContext{" +
+                "fullHandshakes=" + fullHandshakes.get() +
+                ", resumedHandshakes=" + resumedHandshakes.get() +
+                ", resumptionRate=" + String.format("%.2f", getResumptionRate()) +
+                '}';
+    }
+}
@@ -0,0 +1,460 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads a file as byte ranges, in parallel over separate pooled connections for proxies that cap
+ * the bandwidth of a single connection, and optionally resumable.
+ * <p>
+ * A HEAD request checks for {@code Accept-Ranges: bytes} and a {@code Content-Length}. The file is then
+ * preallocated to that length and every range is written to its place with positional writes. Ranges
+ * carry the ETag or Last-Modified of the HEAD response in {@code If-Range}, so a target that changes
+ * in between answers 200 instead of a 206 and the download is given up rather than stitched together.
+ * A range that fails is resumed from where it stopped, up to {@code retries} times. When resumable,
+ * progress and the validator are kept in a {@code .download-checkpoint} file next to the target file,
+ * and a later run for the same URL picks up from there as long as the validator still matches.
+ */
+final class RangedDownloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(RangedDownloader.class);
+
+    // Checkpoints are written (after syncing the file) at most this often
+    private static final long SAVE_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * Sends a request the way {@link ProxyService} does; the caller closes the response.
+     */
+    interface Sender {
+        CloseableHttpResponse send(HttpUriRequest request) throws IOException;
+    }
+
+    private final Sender sender;
+    private final HttpClientConfig.Download config;
+
+    RangedDownloader(Sender sender, HttpClientConfig.Download config) {
+        this.sender = sender;
+        this.config = config;
+    }
+
+    static Path checkpointFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".download-checkpoint");
+    }
+
+    /**
+     * Downloads the target into the file and returns the number of bytes written, or -1 when the
+     * target does not serve byte ranges, is empty, or is too small to split and the download is not
+     * resumable. The file is not complete then, and any checkpoint for it is removed.
+     */
+    long download(String targetUrl, Path file, boolean resumable) throws IOException {
+        Path checkpointFile = checkpointFile(file);
+        Probe probe = probe(targetUrl);
+        // An empty target has no ranges to split or resume
+        if (probe == null || probe.length == 0) {
+            Files.deleteIfExists(checkpointFile);
+            return -1;
+        }
+        // Without a validator a resumed range could come from a different version of the file
+        resumable = resumable && probe.validator != null;
+
+        Checkpoint saved = resumable ? Checkpoint.load(checkpointFile, targetUrl, probe, file) : null;
+        boolean resumed = saved != null;
+        int parts = (int) Math.min(config.getParallelism(), probe.length / Math.max(1, config.getMinPartSize()));
+        if (!resumed && parts < 2 && !resumable) {
+            return -1;
+        }
+        Checkpoint checkpoint = resumed ? saved : new Checkpoint(resumable ? checkpointFile : null, targetUrl, probe,
+                split(probe.length, Math.max(1, parts)));
+        if (resumed) {
+            logger.info("Resuming download of {} at {} of {} bytes", targetUrl, checkpoint.written(), probe.length);
+        }
+
+        long start = System.nanoTime();
+        List<Range> ranges = checkpoint.ranges;
+        Queue<HttpRequestBase> inFlight = new ConcurrentLinkedQueue<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size(), r -> {
+            Thread t = new Thread(r, "ranged-download-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        boolean complete = false;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (!resumed) {
+                raf.setLength(0);
+                raf.setLength(probe.length);
+                checkpoint.save(null);
+            }
+            FileChannel channel = raf.getChannel();
+            List<Future<?>> results = new ArrayList<>(ranges.size());
+            for (Range range : ranges) {
+                results.add(executor.submit(() -> {
+                    fetch(targetUrl, probe, range, channel, checkpoint, inFlight, abandoned);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                // Blocking reads don't notice an interrupt; aborting closes their connections. The workers
+                // must be gone before the last save, or a resumed run races them. No interrupt: it would
+                // close the shared channel.
+                abandoned.set(true);
+                inFlight.forEach(HttpRequestBase::abort);
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                checkpoint.save(channel);
+                throw e;
+            }
+            complete = true;
+            long written = checkpoint.written();
+            logger.info("Downloaded {} bytes in {} ranges in {} ms", written, ranges.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return written;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RangesRejectedException) {
+                logger.info("Ranged download abandoned: {}", e.getCause().getMessage());
+                Files.deleteIfExists(checkpointFile);
+                return -1;
+            }
+            if (resumable) {
+                logger.warn("Download of {} stopped at {} of {} bytes; run it again to resume", targetUrl,
+                        checkpoint.written(), probe.length);
+            }
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ranged download interrupted");
+        } finally {
+            executor.shutdownNow();
+            if (complete) {
+                Files.deleteIfExists(checkpointFile);
+            }
+        }
+    }
+
+    /**
+     * Checks the file against a checksum given as {@code <algorithm>:<hex>}, e.g. {@code SHA-256:9f86d0...};
+     * the algorithm is any {@link MessageDigest} name.
+     */
+    static void verifyChecksum(Path file, String checksum) throws IOException {
+        int colon = checksum.indexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Checksum must be <algorithm>:<hex>, got [" + checksum + "]");
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(checksum.substring(0, colon).trim());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown checksum algorithm in [" + checksum + "]", e);
+        }
+        ByteBuffer buffer = BufferPool.shared().acquire(EntityStreams.BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            BufferPool.shared().release(buffer);
+        }
+        StringBuilder actual = new StringBuilder();
+        for (byte b : digest.digest()) {
+            actual.append(String.format("%02x", b));
+        }
+        String expected = checksum.substring(colon + 1).trim();
+        if (!actual.toString().equalsIgnoreCase(expected)) {
+            throw new IOException("Checksum mismatch for " + file + ": expected " + expected + ", got " + actual);
+        }
+        logger.info("Checksum {} verified for [{}]", checksum.substring(0, colon), file);
+    }
+
+    // Length and validator of the target, or null when it does not serve byte ranges
+    private Probe probe(String targetUrl) throws IOException {
+        HttpHead head = new HttpHead(targetUrl);
+        head.setHeader("Accept-Encoding", "identity");
+        try (CloseableHttpResponse response = sender.send(head)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            Header acceptRanges = response.getFirstHeader("Accept-Ranges");
+            Header contentLength = response.getFirstHeader("Content-Length");
+            if (statusCode < 200 || statusCode >= 300 || acceptRanges == null
+                    || !acceptRanges.getValue().toLowerCase().contains("bytes") || contentLength == null
+                    || response.getFirstHeader("Content-Encoding") != null) {
+                logger.debug("No byte ranges for {}: status {}, Accept-Ranges {}", targetUrl, statusCode, acceptRanges);
+                return null;
+            }
+            long length;
+            try {
+                length = Long.parseLong(contentLength.getValue().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            // Weak ETags can't be used with If-Range
+            Header etag = response.getFirstHeader("ETag");
+            Header lastModified = response.getFirstHeader("Last-Modified");
+            String validator = etag != null && !etag.getValue().startsWith("W/") ? etag.getValue()
+                    : lastModified != null ? lastModified.getValue() : null;
+            return new Probe(length, validator);
+        }
+    }
+
+    private static List<Range> split(long length, int parts) {
+        List<Range> ranges = new ArrayList<>(parts);
+        long partSize = (length + parts - 1) / parts;
+        for (long from = 0; from < length; from += partSize) {
+            ranges.add(new Range(from, Math.min(from + partSize, length) - 1, 0));
+        }
+        return ranges;
+    }
+
+    private void fetch(String targetUrl, Probe probe, Range range, FileChannel channel, Checkpoint checkpoint,
+                       Queue<HttpRequestBase> inFlight, AtomicBoolean abandoned) throws IOException {
+        int retries = config.getRetries();
+        while (!range.isComplete()) {
+            HttpGet request = rangeRequest(targetUrl, probe, range.next(), range.to);
+            inFlight.add(request);
+            // Checked after registering, so the abort sweep either sees the request or this sees the flag
+            if (abandoned.get()) {
+                inFlight.remove(request);
+                throw new IOException("Download abandoned after another range failed");
+            }
+            try {
+                transfer(request, range, channel, checkpoint);
+            } catch (RangesRejectedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (abandoned.get() || retries-- <= 0) {
+                    throw e;
+                }
+                logger.warn("Range {}-{} failed at {}: {}; resuming", range.from, range.to, range.next(), e.getMessage());
+            } finally {
+                inFlight.remove(request);
+            }
+        }
+    }
+
+    private static HttpGet rangeRequest(String targetUrl, Probe probe, long from, long to) {
+        HttpGet request = new HttpGet(targetUrl);
+        request.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        // Decoded content would not line up with the byte offsets
+        request.setHeader("Accept-Encoding", "identity");
+        request.setHeader("Range", "bytes=" + from + "-" + to);
+        if (probe.validator != null) {
+            request.setHeader("If-Range", probe.validator);
+        }
+        return request;
+    }
+
+    private void transfer(HttpGet request, Range range, FileChannel channel, Checkpoint checkpoint)
+            throws IOException {
+        long from = range.next();
+        try (CloseableHttpResponse response = sender.send(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 200) {
+                throw new RangesRejectedException("target answered a range request with the whole content");
+            }
+            if (statusCode != 206) {
+                throw new IOException(ProxyService.minimalFailureMessage(response, statusCode));
+            }
+            Header contentRange = response.getFirstHeader("Content-Range");
+            if (contentRange == null || !contentRange.getValue().trim().startsWith("bytes " + from + "-" + range.to + "/")) {
+                throw new RangesRejectedException("unexpected Content-Range " + contentRange + " for bytes "
+                        + from + "-" + range.to);
+            }
+            HttpEntity entity = response.getEntity();
+            long position = from;
+            ByteBuffer buffer = BufferPool.shared().acquire(EntityStreams.BUFFER_SIZE);
+            try (InputStream in = entity.getContent()) {
+                int n;
+                while ((n = in.read(buffer.array(), 0, EntityStreams.BUFFER_SIZE)) != -1) {
+                    buffer.clear();
+                    buffer.limit(n);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    range.advance(position);
+                    checkpoint.progress(channel);
+                }
+            } finally {
+                BufferPool.shared().release(buffer);
+            }
+            if (position != range.to + 1) {
+                throw new IOException("Range " + from + "-" + range.to + " ended at " + position);
+            }
+        }
+    }
+
+    private static final class Probe {
+        private final long length;
+        private final String validator;
+
+        private Probe(long length, String validator) {
+            this.length = length;
+            this.validator = validator;
+        }
+    }
+
+    // Inclusive byte range and how far into it the file has been written
+    private static final class Range {
+        private final long from;
+        private final long to;
+        private volatile long written;
+
+        private Range(long from, long to, long written) {
+            this.from = from;
+            this.to = to;
+            this.written = written;
+        }
+
+        long next() {
+            return from + written;
+        }
+
+        void advance(long position) {
+            written = position - from;
+        }
+
+        boolean isComplete() {
+            return next() > to;
+        }
+    }
+
+    /**
+     * Download progress persisted next to the target file as a properties file. Without a path
+     * it only tracks progress in memory.
+     */
+    private static final class Checkpoint {
+        private final Path path;
+        private final Properties properties;
+        private final List<Range> ranges;
+        private volatile long lastSave = System.nanoTime();
+
+        private Checkpoint(Path path, String targetUrl, Probe probe, List<Range> ranges) {
+            this.path = path;
+            this.ranges = ranges;
+            this.properties = new Properties();
+            properties.setProperty("url", targetUrl);
+            properties.setProperty("length", String.valueOf(probe.length));
+            if (probe.validator != null) {
+                properties.setProperty("validator", probe.validator);
+            }
+        }
+
+        // Resumes only if the URL, length and validator are unchanged and the file is still there
+        static Checkpoint load(Path path, String targetUrl, Probe probe, Path file) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            Properties saved = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                saved.load(in);
+            }
+            if (targetUrl.equals(saved.getProperty("url"))
+                    && String.valueOf(probe.length).equals(saved.getProperty("length"))
+                    && probe.validator.equals(saved.getProperty("validator"))
+                    && Files.isRegularFile(file) && Files.size(file) == probe.length) {
+                try {
+                    List<Range> ranges = new ArrayList<>();
+                    for (String range : saved.getProperty("ranges", "").split(",")) {
+                        // from-to:written
+                        int dash = range.indexOf('-');
+                        int colon = range.indexOf(':');
+                        ranges.add(new Range(Long.parseLong(range.substring(0, dash)),
+                                Long.parseLong(range.substring(dash + 1, colon)),
+                                Long.parseLong(range.substring(colon + 1))));
+                    }
+                    return new Checkpoint(path, targetUrl, probe, ranges);
+                } catch (RuntimeException e) {
+                    logger.warn("Unreadable download checkpoint [{}]: {}", path, e.getMessage());
+                }
+            } else {
+                logger.info("Ignoring stale download checkpoint [{}]", path);
+            }
+            return null;
+        }
+
+        long written() {
+            long written = 0;
+            for (Range range : ranges) {
+                written += Math.min(range.written, range.to - range.from + 1);
+            }
+            return written;
+        }
+
+        void progress(FileChannel channel) throws IOException {
+            if (path != null && System.nanoTime() - lastSave >= SAVE_INTERVAL_NANOS) {
+                save(channel);
+            }
+        }
+
+        // Progress is read before the file is synced, so the checkpoint never claims bytes that are not on
+        // disk: ranges keep advancing during the force, and only what was written before it is recorded
+        synchronized void save(FileChannel channel) throws IOException {
+            if (path == null) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (Range range : ranges) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(range.from).append('-').append(range.to).append(':').append(range.written);
+            }
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+            }
+            properties.setProperty("ranges", sb.toString());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                properties.store(out, "Ranged download checkpoint");
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSave = System.nanoTime();
+        }
+    }
+
+    // The target ignored or changed under the ranges: fall back to a single stream
+    private static final class RangesRejectedException extends IOException {
+        RangesRejectedException(String message) {
+            super(message);
+        }
+    }
+}
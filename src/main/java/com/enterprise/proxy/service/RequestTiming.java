@@ -0,0 +1,100 @@
+package com.enterprise.proxy.service;
+
+import java.util.Locale;
+
+/**
+ * Phase timings of one proxied request, filled in by the hooks of {@link RequestTimingRecorder}.
+ * <p>
+ * Phases form a waterfall: DNS, connect and TLS are measured directly; the others run from the end
+ * of the previous phase ("mark") to the event that closes them. A CONNECT exchange is the time
+ * between the TCP connect (or the last 407) and the start of the TLS handshake. Phases repeat when
+ * a request opens several connections or falls back to another scheme, so durations are summed.
+ */
+final class RequestTiming {
+
+    enum Phase {
+        DNS, CONNECT, TUNNEL, AUTH_407, TLS, TTFB, BODY;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    final String url;
+    final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long[] nanos = new long[Phase.values().length];
+    private long mark = startNanos;
+    private long endNanos;
+    private int authLegs;
+    private int connections;
+    private int attempts;
+    private String scheme;
+    private String outcome;
+
+    RequestTiming(String url) {
+        this.url = url;
+    }
+
+    void record(Phase phase, long start, long end) {
+        nanos[phase.ordinal()] += end - start;
+        mark = end;
+        if (phase == Phase.CONNECT) {
+            connections++;
+        } else if (phase == Phase.AUTH_407) {
+            authLegs++;
+        }
+    }
+
+    // Closes a phase that began when the previous one ended
+    void recordSinceMark(Phase phase, long now) {
+        record(phase, mark, now);
+    }
+
+    void attempt(ProxyAuthMode mode) {
+        attempts++;
+        scheme = mode.name();
+    }
+
+    void finish(String outcome) {
+        this.outcome = outcome;
+        endNanos = System.nanoTime();
+    }
+
+    long nanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    long totalNanos() {
+        return endNanos - startNanos;
+    }
+
+    // Pool lease, request writing, cache lookups and everything else not covered by a phase
+    long otherNanos() {
+        long covered = 0;
+        for (long n : nanos) {
+            covered += n;
+        }
+        return Math.max(0, totalNanos() - covered);
+    }
+
+    int authLegs() {
+        return authLegs;
+    }
+
+    int connections() {
+        return connections;
+    }
+
+    int attempts() {
+        return attempts;
+    }
+
+    String scheme() {
+        return scheme;
+    }
+
+    String outcome() {
+        return outcome;
+    }
+}
@@ -0,0 +1,340 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.service.RequestTiming.Phase;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.AuthenticationStrategy;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.impl.client.ProxyAuthenticationStrategy;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional per-request phase timing ({@code http.client.timing.enabled}).
+ * <p>
+ * {@link ProxyService} installs the hooks returned here into its clients: a DNS resolver and
+ * socket factories time DNS, TCP connect and the TLS handshake, the proxy auth strategy marks every
+ * 407 leg, and a response interceptor marks the response headers. The request runs on the calling
+ * thread, so the hooks find its {@link RequestTiming} in a thread local. Each request is written as
+ * one JSON line to {@code http.client.timing.file}, or to the {@code com.enterprise.proxy.timing}
+ * logger, and kept for {@link #summary()}. When timing is disabled the hooks are not installed.
+ */
+@Component
+public class RequestTimingRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestTimingRecorder.class);
+    private static final Logger timingLog = LoggerFactory.getLogger("com.enterprise.proxy.timing");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Completed requests kept for the summary; later ones are only written out
+    private static final int MAX_RETAINED = 100000;
+
+    private final HttpClientConfig.Timing config;
+    private final ThreadLocal<RequestTiming> current = new ThreadLocal<>();
+    private final List<RequestTiming> completed = new ArrayList<>();
+    private BufferedWriter writer;
+
+    @Autowired
+    public RequestTimingRecorder(HttpClientConfig httpClientConfig) {
+        this.config = httpClientConfig.getTiming();
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    void begin(String url) {
+        if (isEnabled()) {
+            current.set(new RequestTiming(url));
+        }
+    }
+
+    void attempt(ProxyAuthMode mode) {
+        RequestTiming timing = current.get();
+        if (timing != null) {
+            timing.attempt(mode);
+        }
+    }
+
+    void bodyRead() {
+        RequestTiming timing = current.get();
+        if (timing != null) {
+            timing.recordSinceMark(Phase.BODY, System.nanoTime());
+        }
+    }
+
+    void end(String outcome) {
+        RequestTiming timing = current.get();
+        if (timing == null) {
+            return;
+        }
+        current.remove();
+        timing.finish(outcome);
+        write(toJson(timing));
+        synchronized (completed) {
+            if (completed.size() < MAX_RETAINED) {
+                completed.add(timing);
+            }
+        }
+    }
+
+    DnsResolver dnsResolver(DnsResolver delegate) {
+        if (!isEnabled()) {
+            return delegate;
+        }
+        return host -> {
+            long start = System.nanoTime();
+            try {
+                return delegate.resolve(host);
+            } finally {
+                record(Phase.DNS, start);
+            }
+        };
+    }
+
+    ConnectionSocketFactory socketFactory(ConnectionSocketFactory delegate) {
+        return isEnabled() ? new TimedSocketFactory(delegate) : delegate;
+    }
+
+    LayeredConnectionSocketFactory socketFactory(LayeredConnectionSocketFactory delegate) {
+        return isEnabled() ? new TimedLayeredSocketFactory(delegate) : delegate;
+    }
+
+    AuthenticationStrategy proxyAuthenticationStrategy() {
+        if (!isEnabled()) {
+            return new ProxyAuthenticationStrategy();
+        }
+        return new ProxyAuthenticationStrategy() {
+            @Override
+            public boolean isAuthenticationRequested(HttpHost authhost, HttpResponse response, HttpContext context) {
+                boolean requested = super.isAuthenticationRequested(authhost, response, context);
+                RequestTiming timing = current.get();
+                if (requested && timing != null) {
+                    timing.recordSinceMark(Phase.AUTH_407, System.nanoTime());
+                }
+                return requested;
+            }
+        };
+    }
+
+    /**
+     * Marks the arrival of the final response headers; null when timing is disabled.
+     */
+    HttpResponseInterceptor responseInterceptor() {
+        if (!isEnabled()) {
+            return null;
+        }
+        return (response, context) -> {
+            RequestTiming timing = current.get();
+            // A final 407 has already been counted as an auth leg
+            if (timing != null && response.getStatusLine().getStatusCode() != 407) {
+                timing.recordSinceMark(Phase.TTFB, System.nanoTime());
+            }
+        };
+    }
+
+    private void record(Phase phase, long start) {
+        RequestTiming timing = current.get();
+        if (timing != null) {
+            timing.record(phase, start, System.nanoTime());
+        }
+    }
+
+    private static String toJson(RequestTiming timing) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("ts", Instant.ofEpochMilli(timing.startMillis).toString());
+        record.put("url", timing.url);
+        record.put("scheme", timing.scheme());
+        record.put("attempts", timing.attempts());
+        record.put("outcome", timing.outcome());
+        record.put("total_ms", millis(timing.totalNanos()));
+        for (Phase phase : Phase.values()) {
+            record.put(phase.key() + "_ms", millis(timing.nanos(phase)));
+        }
+        record.put("other_ms", millis(timing.otherNanos()));
+        record.put("auth_legs", timing.authLegs());
+        record.put("connections", timing.connections());
+        try {
+            return objectMapper.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private void write(String line) {
+        String file = config.getFile();
+        if (file == null || file.trim().isEmpty()) {
+            timingLog.info(line);
+            return;
+        }
+        synchronized (this) {
+            try {
+                if (writer == null) {
+                    writer = Files.newBufferedWriter(Paths.get(file.trim()), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                logger.warn("Failed to write request timing to [{}]: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns a table with count, average, p50, p95 and max per phase over the recorded requests,
+     * or null if none were recorded. Count is the number of requests in which the phase occurred;
+     * share is the phase's part of the summed total time.
+     */
+    public String summary() {
+        List<RequestTiming> timings;
+        synchronized (completed) {
+            timings = new ArrayList<>(completed);
+        }
+        if (timings.isEmpty()) {
+            return null;
+        }
+        long grandTotal = 0;
+        for (RequestTiming timing : timings) {
+            grandTotal += timing.totalNanos();
+        }
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-10s %7s %9s %9s %9s %9s %7s%n", "phase", "count", "avg ms", "p50 ms", "p95 ms", "max ms", "share"));
+        for (Phase phase : Phase.values()) {
+            List<Long> values = new ArrayList<>();
+            for (RequestTiming timing : timings) {
+                if (timing.nanos(phase) > 0) {
+                    values.add(timing.nanos(phase));
+                }
+            }
+            appendRow(table, phase.key(), values, grandTotal);
+        }
+        List<Long> other = new ArrayList<>();
+        List<Long> total = new ArrayList<>();
+        for (RequestTiming timing : timings) {
+            other.add(timing.otherNanos());
+            total.add(timing.totalNanos());
+        }
+        appendRow(table, "other", other, grandTotal);
+        appendRow(table, "total", total, grandTotal);
+        return table.toString();
+    }
+
+    private static void appendRow(StringBuilder table, String name, List<Long> values, long grandTotal) {
+        Collections.sort(values);
+        long sum = 0;
+        for (long v : values) {
+            sum += v;
+        }
+        int n = values.size();
+        table.append(String.format("%-10s %7d %9.1f %9.1f %9.1f %9.1f %6.1f%%%n", name, n,
+                n > 0 ? sum / 1e6 / n : 0.0,
+                percentile(values, 50) / 1e6,
+                percentile(values, 95) / 1e6,
+                n > 0 ? values.get(n - 1) / 1e6 : 0.0,
+                grandTotal > 0 ? 100.0 * sum / grandTotal : 0.0));
+    }
+
+    // Nearest-rank percentile over sorted values
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close request timing file: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    private class TimedSocketFactory implements ConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+
+        TimedSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        // For a direct https route this also covers the TLS handshake
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            } finally {
+                record(Phase.CONNECT, start);
+            }
+        }
+    }
+
+    private class TimedLayeredSocketFactory extends TimedSocketFactory implements LayeredConnectionSocketFactory {
+        private final LayeredConnectionSocketFactory delegate;
+
+        TimedLayeredSocketFactory(LayeredConnectionSocketFactory delegate) {
+            super(delegate);
+            this.delegate = delegate;
+        }
+
+        // Called on a proxy tunnel once CONNECT has succeeded
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+                throws IOException, UnknownHostException {
+            long start = System.nanoTime();
+            RequestTiming timing = current.get();
+            if (timing != null) {
+                timing.recordSinceMark(Phase.TUNNEL, start);
+            }
+            try {
+                return delegate.createLayeredSocket(socket, target, port, context);
+            } finally {
+                record(Phase.TLS, start);
+            }
+        }
+    }
+}
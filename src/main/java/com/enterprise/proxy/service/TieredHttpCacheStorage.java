@@ -0,0 +1,200 @@
+package com.enterprise.proxy.service;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializer;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.impl.client.cache.DefaultHttpCacheEntrySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache storage with an in-memory LRU tier and an optional write-through disk tier.
+ * <p>
+ * The memory tier is bounded by entry count. The disk tier is bounded by total bytes and
+ * evicts least recently used files; entries found only on disk are promoted back to memory.
+ */
+public class TieredHttpCacheStorage implements HttpCacheStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredHttpCacheStorage.class);
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private final HttpCacheEntrySerializer serializer = new DefaultHttpCacheEntrySerializer();
+    private final Map<String, HttpCacheEntry> memory;
+    private final Path diskDir;
+    private final long diskMaxBytes;
+    // File name -> size, in access order, for LRU eviction of the disk tier
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    public TieredHttpCacheStorage(int maxMemoryEntries, Path diskDir, long diskMaxBytes) throws IOException {
+        this.memory = new LinkedHashMap<String, HttpCacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HttpCacheEntry> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        this.diskDir = diskDir;
+        this.diskMaxBytes = diskMaxBytes;
+        if (diskDir != null) {
+            Files.createDirectories(diskDir);
+            loadDiskIndex();
+        }
+    }
+
+    @Override
+    public synchronized void putEntry(String key, HttpCacheEntry entry) throws IOException {
+        memory.put(key, entry);
+        if (diskDir != null) {
+            writeToDisk(key, entry);
+        }
+    }
+
+    @Override
+    public synchronized HttpCacheEntry getEntry(String key) throws IOException {
+        HttpCacheEntry entry = memory.get(key);
+        if (entry != null || diskDir == null) {
+            if (entry != null && diskDir != null) {
+                // Keep the disk LRU order in step with memory hits
+                diskIndex.get(fileName(key));
+            }
+            return entry;
+        }
+        String fileName = fileName(key);
+        if (diskIndex.get(fileName) == null) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(diskDir.resolve(fileName))) {
+            entry = serializer.readFrom(in);
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable cache entry [{}]: {}", fileName, e.getMessage());
+            deleteFromDisk(fileName);
+            return null;
+        }
+        memory.put(key, entry);
+        return entry;
+    }
+
+    @Override
+    public synchronized void removeEntry(String key) throws IOException {
+        memory.remove(key);
+        if (diskDir != null) {
+            deleteFromDisk(fileName(key));
+        }
+    }
+
+    @Override
+    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException {
+        HttpCacheEntry existing = getEntry(key);
+        putEntry(key, callback.update(existing));
+    }
+
+    public synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    private void writeToDisk(String key, HttpCacheEntry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        serializer.writeTo(entry, buffer);
+        long size = buffer.size();
+        if (size > diskMaxBytes) {
+            return;
+        }
+
+        String fileName = fileName(key);
+        Path tmp = Files.createTempFile(diskDir, "put", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                buffer.writeTo(out);
+            }
+            Files.move(tmp, diskDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        Long previous = diskIndex.put(fileName, size);
+        diskBytes += size - (previous != null ? previous : 0);
+        evictDisk();
+    }
+
+    private void evictDisk() {
+        Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            diskBytes -= eldest.getValue();
+            try {
+                Files.deleteIfExists(diskDir.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                logger.warn("Failed to evict cache file [{}]: {}", eldest.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private void deleteFromDisk(String fileName) throws IOException {
+        Long size = diskIndex.remove(fileName);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        Files.deleteIfExists(diskDir.resolve(fileName));
+    }
+
+    // Rebuild the LRU index from a previous run, oldest files first
+    private void loadDiskIndex() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDir, "*" + ENTRY_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+        for (Path file : files) {
+            long size = Files.size(file);
+            diskIndex.put(file.getFileName().toString(), size);
+            diskBytes += size;
+        }
+        evictDisk();
+        logger.info("Response cache disk tier at [{}]: {} entries, {} bytes", diskDir, diskIndex.size(), diskBytes);
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.append(ENTRY_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.enterprise.proxy.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Server side of the NTLM handshake for the stand-in proxy: builds Type 2 challenges shaped
+ * like those of a Windows proxy and reads the user from Type 3 messages. Responses are not
+ * verified, any well-formed Type 3 completes the handshake.
+ */
+final class NtlmMessages {
+
+    private static final byte[] SIGNATURE = {'N', 'T', 'L', 'M', 'S', 'S', 'P', 0};
+
+    // Unicode, OEM, request target, NTLM, always sign, target type domain,
+    // extended session security, target info, version, 128-bit, key exchange, 56-bit
+    private static final int CHALLENGE_FLAGS = 0xE2898215;
+
+    // AV pair ids from MS-NLMP 2.2.2.1
+    private static final short AV_EOL = 0;
+    private static final short AV_NB_COMPUTER_NAME = 1;
+    private static final short AV_NB_DOMAIN_NAME = 2;
+    private static final short AV_DNS_COMPUTER_NAME = 3;
+    private static final short AV_DNS_DOMAIN_NAME = 4;
+    private static final short AV_TIMESTAMP = 7;
+
+    // Windows epoch (1601-01-01) offset from the Unix epoch, in 100 ns units
+    private static final long FILETIME_EPOCH_OFFSET = 116444736000000000L;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private NtlmMessages() {
+    }
+
+    /**
+     * Returns the NTLM message type (1, 2 or 3) of a base64 token, or -1 if it is not NTLM.
+     */
+    static int messageType(byte[] message) {
+        if (message.length < 12 || !Arrays.equals(Arrays.copyOf(message, 8), SIGNATURE)) {
+            return -1;
+        }
+        return ByteBuffer.wrap(message, 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    static byte[] decode(String token) {
+        try {
+            return Base64.getDecoder().decode(token.trim());
+        } catch (IllegalArgumentException e) {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Builds a base64 Type 2 message with a fresh server challenge and a full target info block.
+     */
+    static String challenge(String domain, String computer) {
+        byte[] targetName = domain.getBytes(StandardCharsets.UTF_16LE);
+
+        ByteArrayOutputStream targetInfo = new ByteArrayOutputStream();
+        writeAvPair(targetInfo, AV_NB_DOMAIN_NAME, domain.getBytes(StandardCharsets.UTF_16LE));
+        writeAvPair(targetInfo, AV_NB_COMPUTER_NAME, computer.getBytes(StandardCharsets.UTF_16LE));
+        String dnsDomain = domain.toLowerCase() + ".local";
+        writeAvPair(targetInfo, AV_DNS_DOMAIN_NAME, dnsDomain.getBytes(StandardCharsets.UTF_16LE));
+        writeAvPair(targetInfo, AV_DNS_COMPUTER_NAME,
+                (computer.toLowerCase() + "." + dnsDomain).getBytes(StandardCharsets.UTF_16LE));
+        ByteBuffer timestamp = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        timestamp.putLong(System.currentTimeMillis() * 10000 + FILETIME_EPOCH_OFFSET);
+        writeAvPair(targetInfo, AV_TIMESTAMP, timestamp.array());
+        writeAvPair(targetInfo, AV_EOL, new byte[0]);
+        byte[] info = targetInfo.toByteArray();
+
+        byte[] serverChallenge = new byte[8];
+        random.nextBytes(serverChallenge);
+
+        int headerLength = 56;
+        ByteBuffer message = ByteBuffer.allocate(headerLength + targetName.length + info.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        message.put(SIGNATURE);
+        message.putInt(2);
+        putSecurityBuffer(message, targetName.length, headerLength);
+        message.putInt(CHALLENGE_FLAGS);
+        message.put(serverChallenge);
+        message.putLong(0);
+        putSecurityBuffer(message, info.length, headerLength + targetName.length);
+        // Version: Windows 10.0 build 17763, NTLM revision 15
+        message.put((byte) 10).put((byte) 0).putShort((short) 17763).put(new byte[]{0, 0, 0, 15});
+        message.put(targetName);
+        message.put(info);
+        return Base64.getEncoder().encodeToString(message.array());
+    }
+
+    /**
+     * Returns DOMAIN\\user from a Type 3 message, or null if the message is malformed.
+     */
+    static String authenticatedUser(byte[] type3) {
+        if (messageType(type3) != 3 || type3.length < 52) {
+            return null;
+        }
+        String domain = readUnicodeField(type3, 28);
+        String user = readUnicodeField(type3, 36);
+        if (domain == null || user == null) {
+            return null;
+        }
+        return domain.isEmpty() ? user : domain + "\\" + user;
+    }
+
+    private static String readUnicodeField(byte[] message, int securityBufferOffset) {
+        ByteBuffer buffer = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        int length = buffer.getShort(securityBufferOffset) & 0xFFFF;
+        int offset = buffer.getInt(securityBufferOffset + 4);
+        if (offset < 0 || offset + length > message.length) {
+            return null;
+        }
+        return new String(message, offset, length, StandardCharsets.UTF_16LE);
+    }
+
+    private static void putSecurityBuffer(ByteBuffer message, int length, int offset) {
+        message.putShort((short) length);
+        message.putShort((short) length);
+        message.putInt(offset);
+    }
+
+    private static void writeAvPair(ByteArrayOutputStream out, short id, byte[] value) {
+        ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort(id).putShort((short) value.length);
+        out.write(header.array(), 0, 4);
+        out.write(value, 0, value.length);
+    }
+}
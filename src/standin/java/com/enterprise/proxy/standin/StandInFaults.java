@@ -0,0 +1,109 @@
+package com.enterprise.proxy.standin;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Faults injected by the {@link StandInProxy}. Settings can be changed while the proxy is
+ * running, e.g. to start a 407 storm in the middle of a load test.
+ */
+public class StandInFaults {
+
+    // Added before every response (and before the CONNECT reply)
+    private volatile long latencyMillis;
+    // Uniform random extra latency in [0, latencyJitterMillis]
+    private volatile long latencyJitterMillis;
+    // Per-connection cap on bytes sent to the client, 0 = unlimited
+    private volatile long bandwidthBytesPerSecond;
+    // Probability that a request is answered with a TCP reset instead of a response
+    private volatile double resetRate;
+    // Probability that an already authenticated request is challenged again with 407
+    private volatile double challengeRate;
+    // While now < stormUntil every request gets 407 and authenticated NTLM connections are forgotten
+    private volatile long stormUntil;
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public long getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    public void setLatencyJitterMillis(long latencyJitterMillis) {
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    public long getBandwidthBytesPerSecond() {
+        return bandwidthBytesPerSecond;
+    }
+
+    public void setBandwidthBytesPerSecond(long bandwidthBytesPerSecond) {
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    }
+
+    public double getResetRate() {
+        return resetRate;
+    }
+
+    public void setResetRate(double resetRate) {
+        this.resetRate = resetRate;
+    }
+
+    public double getChallengeRate() {
+        return challengeRate;
+    }
+
+    public void setChallengeRate(double challengeRate) {
+        this.challengeRate = challengeRate;
+    }
+
+    /**
+     * Answers every request with 407 for the given duration.
+     */
+    public void startStorm(long durationMillis) {
+        stormUntil = System.currentTimeMillis() + durationMillis;
+    }
+
+    public boolean isStorming() {
+        return System.currentTimeMillis() < stormUntil;
+    }
+
+    boolean shouldReset() {
+        return chance(resetRate);
+    }
+
+    boolean shouldRechallenge() {
+        return isStorming() || chance(challengeRate);
+    }
+
+    void delay() throws InterruptedException {
+        long latency = latencyMillis;
+        long jitter = latencyJitterMillis;
+        if (jitter > 0) {
+            latency += ThreadLocalRandom.current().nextLong(jitter + 1);
+        }
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+    }
+
+    private static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    @Override
+    public String toString() {
+        return "StandInFaults{" +
+                "latencyMillis=" + latencyMillis +
+                ", latencyJitterMillis=" + latencyJitterMillis +
+                ", bandwidthBytesPerSecond=" + bandwidthBytesPerSecond +
+                ", resetRate=" + resetRate +
+                ", challengeRate=" + challengeRate +
+                ", storming=" + isStorming() +
+                '}';
+    }
+}
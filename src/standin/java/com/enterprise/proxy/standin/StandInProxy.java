@@ -0,0 +1,590 @@
+package com.enterprise.proxy.standin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the corporate proxy, listening on loopback, for load and failure testing of
+ * {@code ProxyService} without touching the real proxy.
+ * <p>
+ * Requests are challenged with 407 for the configured schemes in order (Negotiate, NTLM, Basic).
+ * Negotiate is only offered, never accepted, so clients exercise their fallback chain; NTLM is a
+ * connection-bound handshake with Windows-like Type 2 messages; Basic checks the credentials if
+ * any are set. Once authorized, absolute-form requests are answered with a synthetic body and
+ * CONNECT is tunneled to the requested authority (or a fixed connect target). Latency, bandwidth
+ * caps, connection resets and 407 storms are injected through {@link StandInFaults}.
+ * <p>
+ * Run standalone with e.g.
+ * {@code --port=3128 --auth=negotiate,ntlm,basic --latency=20 --reset-rate=0.01 --storm-every=60000}.
+ */
+public class StandInProxy implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandInProxy.class);
+
+    public enum Scheme {
+        NEGOTIATE("Negotiate"), NTLM("NTLM"), BASIC("Basic");
+
+        private final String token;
+
+        Scheme(String token) {
+            this.token = token;
+        }
+    }
+
+    private static final byte[] CHALLENGE_BODY =
+            "<html><body><h1>407 Proxy Authentication Required</h1></body></html>".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<Scheme> schemes;
+    private final byte[] body;
+    private final StandInFaults faults = new StandInFaults();
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+
+    private volatile String username;
+    private volatile String password;
+    private volatile InetSocketAddress connectTarget;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong challenges = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong tunnels = new AtomicLong();
+
+    /**
+     * Starts listening on the loopback port (0 for an ephemeral port).
+     *
+     * @param schemes  schemes to challenge with, in order; empty for an open proxy
+     * @param bodySize size of the synthetic response body
+     */
+    public StandInProxy(int port, List<Scheme> schemes, int bodySize) throws IOException {
+        this.schemes = Collections.unmodifiableList(new ArrayList<>(schemes));
+        this.body = new byte[bodySize];
+        for (int i = 0; i < bodySize; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        this.serverSocket = new ServerSocket(port, 512, InetAddress.getLoopbackAddress());
+        this.workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "standin-proxy");
+            t.setDaemon(true);
+            return t;
+        });
+        workers.execute(this::acceptLoop);
+        logger.info("Stand-in proxy listening on {} (schemes={}, bodySize={})",
+                serverSocket.getLocalSocketAddress(), schemes, bodySize);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public StandInFaults getFaults() {
+        return faults;
+    }
+
+    /**
+     * Credentials Basic auth must match; without them any Basic credentials are accepted.
+     */
+    public void setCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Tunnels every CONNECT to this address instead of the requested one, e.g. a local TLS origin.
+     */
+    public void setConnectTarget(InetSocketAddress connectTarget) {
+        this.connectTarget = connectTarget;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        // User authenticated by NTLM on this connection, if any
+        String ntlmUser = null;
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new ThrottledOutputStream(s.getOutputStream(), faults)) {
+            String requestLine;
+            while ((requestLine = readLine(in)) != null && !requestLine.isEmpty()) {
+                requests.incrementAndGet();
+                String[] parts = requestLine.split(" ");
+                String method = parts[0];
+                String target = parts.length > 1 ? parts[1] : "";
+                List<String> authorizations = new ArrayList<>();
+                long contentLength = 0;
+                boolean chunked = false;
+                boolean close = false;
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon < 0) {
+                        continue;
+                    }
+                    String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                    String value = line.substring(colon + 1).trim();
+                    if (name.equals("proxy-authorization")) {
+                        authorizations.add(value);
+                    } else if (name.equals("content-length")) {
+                        contentLength = Long.parseLong(value);
+                    } else if (name.equals("transfer-encoding")) {
+                        chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                    } else if ((name.equals("proxy-connection") || name.equals("connection"))
+                            && value.equalsIgnoreCase("close")) {
+                        close = true;
+                    }
+                }
+                discardBody(in, contentLength, chunked);
+
+                if (faults.shouldReset()) {
+                    resets.incrementAndGet();
+                    s.setSoLinger(true, 0);
+                    return;
+                }
+                faults.delay();
+
+                if (!schemes.isEmpty()) {
+                    if (ntlmUser != null && faults.shouldRechallenge()) {
+                        ntlmUser = null;
+                    }
+                    if (ntlmUser == null) {
+                        AuthResult auth = authorize(authorizations);
+                        if (auth.challenge != null) {
+                            challenges.incrementAndGet();
+                            writeChallenge(out, auth.challenge);
+                            if (close) {
+                                return;
+                            }
+                            continue;
+                        }
+                        ntlmUser = auth.ntlmUser;
+                    }
+                }
+
+                if (method.equalsIgnoreCase("CONNECT")) {
+                    tunnel(s, in, out, target);
+                    return;
+                }
+                writeBody(out);
+                if (close) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Stand-in connection closed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class AuthResult {
+        // Proxy-Authenticate values to send, or null when the request is authorized
+        private final List<String> challenge;
+        private final String ntlmUser;
+
+        private AuthResult(List<String> challenge, String ntlmUser) {
+            this.challenge = challenge;
+            this.ntlmUser = ntlmUser;
+        }
+    }
+
+    private AuthResult authorize(List<String> authorizations) {
+        if (faults.isStorming()) {
+            return new AuthResult(allChallenges(), null);
+        }
+        for (String authorization : authorizations) {
+            int space = authorization.indexOf(' ');
+            String scheme = space > 0 ? authorization.substring(0, space) : authorization;
+            String token = space > 0 ? authorization.substring(space + 1).trim() : "";
+
+            if (scheme.equalsIgnoreCase("Basic") && schemes.contains(Scheme.BASIC)) {
+                if (basicCredentialsMatch(token) && !faults.shouldRechallenge()) {
+                    return new AuthResult(null, null);
+                }
+                continue;
+            }
+            boolean ntlmScheme = scheme.equalsIgnoreCase("NTLM") && schemes.contains(Scheme.NTLM);
+            // Windows clients may also send raw NTLM tokens under Negotiate
+            boolean negotiateScheme = scheme.equalsIgnoreCase("Negotiate") && schemes.contains(Scheme.NEGOTIATE);
+            if (ntlmScheme || negotiateScheme) {
+                byte[] message = NtlmMessages.decode(token);
+                int type = NtlmMessages.messageType(message);
+                if (type == 1) {
+                    String challenge = scheme + " " + NtlmMessages.challenge("STANDIN", "PROXY01");
+                    return new AuthResult(Collections.singletonList(challenge), null);
+                }
+                if (type == 3) {
+                    String user = NtlmMessages.authenticatedUser(message);
+                    if (user != null) {
+                        logger.debug("NTLM handshake completed for [{}]", user);
+                        return new AuthResult(null, user);
+                    }
+                }
+                // Kerberos tokens cannot be validated here: reject so the client falls back
+            }
+        }
+        return new AuthResult(allChallenges(), null);
+    }
+
+    private List<String> allChallenges() {
+        List<String> challenge = new ArrayList<>(schemes.size());
+        for (Scheme scheme : schemes) {
+            challenge.add(scheme == Scheme.BASIC ? "Basic realm=\"standin\"" : scheme.token);
+        }
+        return challenge;
+    }
+
+    private boolean basicCredentialsMatch(String token) {
+        String expectedUser = username;
+        if (expectedUser == null) {
+            return true;
+        }
+        String expected = expectedUser + ":" + (password != null ? password : "");
+        try {
+            return expected.equals(new String(Base64.getDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void tunnel(Socket client, InputStream clientIn, OutputStream clientOut, String authority)
+            throws IOException {
+        InetSocketAddress address = connectTarget;
+        if (address == null) {
+            int colon = authority.lastIndexOf(':');
+            String host = colon > 0 ? authority.substring(0, colon) : authority;
+            int port = colon > 0 ? Integer.parseInt(authority.substring(colon + 1)) : 443;
+            address = new InetSocketAddress(host, port);
+        }
+        try (Socket upstream = new Socket()) {
+            try {
+                upstream.connect(address, 10000);
+            } catch (IOException e) {
+                clientOut.write("HTTP/1.1 502 Bad Gateway\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                clientOut.flush();
+                return;
+            }
+            tunnels.incrementAndGet();
+            upstream.setTcpNoDelay(true);
+            clientOut.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            clientOut.flush();
+
+            InputStream upstreamIn = upstream.getInputStream();
+            OutputStream upstreamOut = upstream.getOutputStream();
+            workers.execute(() -> {
+                try {
+                    pump(clientIn, upstreamOut);
+                } catch (IOException e) {
+                    // Either side closed
+                } finally {
+                    closeQuietly(upstream);
+                }
+            });
+            try {
+                pump(upstreamIn, clientOut);
+            } finally {
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private static void pump(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            out.flush();
+        }
+    }
+
+    private static void writeChallenge(OutputStream out, List<String> challenge) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 407 Proxy Authentication Required\r\n");
+        for (String value : challenge) {
+            head.append("Proxy-Authenticate: ").append(value).append("\r\n");
+        }
+        head.append("Proxy-Connection: keep-alive\r\n")
+                .append("Content-Type: text/html\r\n")
+                .append("Content-Length: ").append(CHALLENGE_BODY.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        out.write(CHALLENGE_BODY);
+        out.flush();
+    }
+
+    private void writeBody(OutputStream out) throws IOException {
+        out.write(("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private static void discardBody(InputStream in, long contentLength, boolean chunked) throws IOException {
+        if (chunked) {
+            String size;
+            while ((size = readLine(in)) != null) {
+                int semicolon = size.indexOf(';');
+                long chunk = Long.parseLong((semicolon >= 0 ? size.substring(0, semicolon) : size).trim(), 16);
+                if (chunk == 0) {
+                    // Trailers up to the empty line
+                    String trailer;
+                    while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                        logger.trace("Ignoring trailer {}", trailer);
+                    }
+                    return;
+                }
+                skip(in, chunk + 2);
+            }
+            return;
+        }
+        skip(in, contentLength);
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        for (long skipped = 0; skipped < count; ) {
+            long n = in.skip(count - skipped);
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Unexpected end of request body");
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+        }
+        return line.size() > 0 ? line.toString("US-ASCII") : null;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+        logger.info("Stand-in proxy stopped: {}", this);
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getChallenges() {
+        return challenges.get();
+    }
+
+    public long getResets() {
+        return resets.get();
+    }
+
+    public long getTunnels() {
+        return tunnels.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StandInProxy{" +
+                "port=" + getPort() +
+                ", connections=" + connections.get() +
+                ", requests=" + requests.get() +
+                ", challenges=" + challenges.get() +
+                ", resets=" + resets.get() +
+                ", tunnels=" + tunnels.get() +
+                '}';
+    }
+
+    /**
+     * Paces writes to the client at the configured bandwidth cap, read on every write so the
+     * cap can be changed while connections are open.
+     */
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final StandInFaults faults;
+
+        ThrottledOutputStream(OutputStream out, StandInFaults faults) {
+            super(out);
+            this.faults = faults;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long limit = faults.getBandwidthBytesPerSecond();
+            if (limit <= 0) {
+                out.write(b, off, len);
+                return;
+            }
+            // Send in slices of ~20 ms worth of bandwidth, sleeping after each
+            int slice = (int) Math.max(1, Math.min(Integer.MAX_VALUE, limit / 50));
+            while (len > 0) {
+                int n = Math.min(len, slice);
+                out.write(b, off, n);
+                out.flush();
+                off += n;
+                len -= n;
+                try {
+                    TimeUnit.NANOSECONDS.sleep(n * 1000000000L / limit);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the stand-in proxy until the process is stopped.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 3128;
+        List<Scheme> schemes = new ArrayList<>();
+        int bodySize = 1024;
+        String user = null;
+        String pass = null;
+        String connectTarget = null;
+        long stormEvery = 0;
+        long stormDuration = 5000;
+        StandInFaults settings = new StandInFaults();
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                continue;
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "auth":
+                    for (String scheme : value.split(",")) {
+                        if (!scheme.trim().isEmpty() && !scheme.trim().equalsIgnoreCase("none")) {
+                            schemes.add(Scheme.valueOf(scheme.trim().toUpperCase(Locale.ROOT)));
+                        }
+                    }
+                    break;
+                case "body-size":
+                    bodySize = Integer.parseInt(value);
+                    break;
+                case "username":
+                    user = value;
+                    break;
+                case "password":
+                    pass = value;
+                    break;
+                case "connect-target":
+                    connectTarget = value;
+                    break;
+                case "latency":
+                    settings.setLatencyMillis(Long.parseLong(value));
+                    break;
+                case "jitter":
+                    settings.setLatencyJitterMillis(Long.parseLong(value));
+                    break;
+                case "bandwidth":
+                    settings.setBandwidthBytesPerSecond(Long.parseLong(value));
+                    break;
+                case "reset-rate":
+                    settings.setResetRate(Double.parseDouble(value));
+                    break;
+                case "challenge-rate":
+                    settings.setChallengeRate(Double.parseDouble(value));
+                    break;
+                case "storm-every":
+                    stormEvery = Long.parseLong(value);
+                    break;
+                case "storm-duration":
+                    stormDuration = Long.parseLong(value);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    break;
+            }
+        }
+
+        StandInProxy proxy = new StandInProxy(port, schemes, bodySize);
+        proxy.setCredentials(user, pass);
+        if (connectTarget != null) {
+            int colon = connectTarget.lastIndexOf(':');
+            proxy.setConnectTarget(new InetSocketAddress(connectTarget.substring(0, colon),
+                    Integer.parseInt(connectTarget.substring(colon + 1))));
+        }
+        StandInFaults faults = proxy.getFaults();
+        faults.setLatencyMillis(settings.getLatencyMillis());
+        faults.setLatencyJitterMillis(settings.getLatencyJitterMillis());
+        faults.setBandwidthBytesPerSecond(settings.getBandwidthBytesPerSecond());
+        faults.setResetRate(settings.getResetRate());
+        faults.setChallengeRate(settings.getChallengeRate());
+        logger.info("Faults: {}", faults);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        if (stormEvery > 0) {
+            long duration = stormDuration;
+            scheduler.scheduleAtFixedRate(() -> {
+                logger.info("407 storm for {} ms", duration);
+                faults.startStorm(duration);
+            }, stormEvery, stormEvery, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(() -> logger.info("{}", proxy), 10, 10, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdownNow();
+            try {
+                proxy.close();
+            } catch (IOException ignore) {
+            }
+        }));
+    }
+}
@@ -0,0 +1,139 @@
+package com.enterprise.proxy.standin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback HTTPS origin with a throwaway self-signed certificate, as the far end of tunnels through
+ * the stand-in proxy and for TLS handshake benchmarks. Each connection carries one request, answered
+ * with a 200 and a synthetic body.
+ */
+public class StandInTlsOrigin implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandInTlsOrigin.class);
+
+    private static final char[] STORE_PASSWORD = "standin".toCharArray();
+
+    private final byte[] response;
+    private final SSLServerSocket serverSocket;
+    private final ExecutorService workers;
+
+    public StandInTlsOrigin(int port, int bodySize) throws IOException {
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Length: " + bodySize + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        this.response = Arrays.copyOf(head, head.length + bodySize);
+        for (int i = 0; i < bodySize; i++) {
+            response[head.length + i] = (byte) ('a' + i % 26);
+        }
+        this.serverSocket = (SSLServerSocket) selfSignedContext().getServerSocketFactory()
+                .createServerSocket(port, 512, InetAddress.getLoopbackAddress());
+        this.workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "standin-origin");
+            t.setDaemon(true);
+            return t;
+        });
+        workers.execute(this::acceptLoop);
+        logger.info("Stand-in TLS origin listening on {}", serverSocket.getLocalSocketAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // One request per connection: read the head, answer, close
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            int matched = 0;
+            int b;
+            while (matched < 4 && (b = in.read()) != -1) {
+                matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+            OutputStream out = s.getOutputStream();
+            out.write(response);
+            out.flush();
+        } catch (IOException e) {
+            logger.debug("Stand-in origin connection closed: {}", e.getMessage());
+        }
+    }
+
+    // keytool ships with every JDK; the key store only lives until it is loaded
+    private static SSLContext selfSignedContext() throws IOException {
+        File keyStoreFile = File.createTempFile("standin-origin", ".p12");
+        try {
+            Files.delete(keyStoreFile.toPath());
+            String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+            Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "standin",
+                    "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=localhost", "-validity", "2",
+                    "-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+                    "-storepass", new String(STORE_PASSWORD), "-keypass", new String(STORE_PASSWORD))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                throw new IOException("keytool could not create the stand-in certificate");
+            }
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = Files.newInputStream(keyStoreFile.toPath())) {
+                keyStore.load(in, STORE_PASSWORD);
+            }
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, STORE_PASSWORD);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagers.getKeyManagers(), null, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot set up the stand-in certificate", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating the stand-in certificate", e);
+        } finally {
+            Files.deleteIfExists(keyStoreFile.toPath());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+    }
+}
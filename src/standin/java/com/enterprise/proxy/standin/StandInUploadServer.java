@@ -0,0 +1,331 @@
+package com.enterprise.proxy.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loopback stand-in for the chunked upload endpoint used by {@code ChunkedUploader}, for testing
+ * uploads and resume without the real API.
+ * <p>
+ * Chunks are POSTs with {@code Upload-Id}, {@code Content-Range: bytes start-end/total} and
+ * {@code Upload-File-Name}. They may arrive in any order and in parallel, and are written at their
+ * offset into {@code <dir>/<Upload-Id>.part}. A POST with {@code Upload-Complete} checks that every
+ * byte of the file has arrived (409 with the missing ranges otherwise) and moves the part file to
+ * {@code <dir>/<Upload-File-Name>}. Upload state is kept in memory for the life of the server.
+ * <p>
+ * To interrupt an upload, {@link #rejectChunksAfter(int)} answers chunks with 503 once a number of
+ * further chunks were accepted. Run standalone with e.g. {@code --port=8090 --dir=./uploads --reject-after=5}.
+ */
+public class StandInUploadServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandInUploadServer.class);
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private final Path directory;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    // Chunks still accepted before 503s start; negative = unlimited
+    private long chunkAllowance = -1;
+
+    private final AtomicLong chunksAccepted = new AtomicLong();
+    private final AtomicLong chunksRejected = new AtomicLong();
+    private final AtomicLong uploadsCompleted = new AtomicLong();
+
+    /**
+     * Starts listening on the loopback port (0 for an ephemeral port), assembling files in {@code directory}.
+     */
+    public StandInUploadServer(int port, Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 512);
+        server.createContext("/", this::handle);
+        this.workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "standin-upload");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(workers);
+        server.start();
+        logger.info("Stand-in upload endpoint listening on {} (dir={})", server.getAddress(), directory);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Upload URL for clients, e.g. {@code http://127.0.0.1:8090/upload}.
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + getPort() + "/upload";
+    }
+
+    /**
+     * Accepts {@code chunks} more chunks, then answers every further chunk with 503; negative accepts all.
+     */
+    public synchronized void rejectChunksAfter(int chunks) {
+        this.chunkAllowance = chunks;
+    }
+
+    private synchronized boolean takeChunkAllowance() {
+        if (chunkAllowance < 0) {
+            return true;
+        }
+        if (chunkAllowance == 0) {
+            return false;
+        }
+        chunkAllowance--;
+        return true;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respond(exchange, 405, "POST only");
+                return;
+            }
+            String uploadId = exchange.getRequestHeaders().getFirst("Upload-Id");
+            if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches()) {
+                respond(exchange, 400, "Missing or invalid Upload-Id");
+                return;
+            }
+            if (exchange.getRequestHeaders().getFirst("Upload-Complete") != null) {
+                complete(exchange, uploadId);
+            } else {
+                receiveChunk(exchange, uploadId);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Stand-in upload request failed: {}", e.toString());
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void receiveChunk(HttpExchange exchange, String uploadId) throws IOException {
+        String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+        Matcher range = contentRange != null ? CONTENT_RANGE.matcher(contentRange) : null;
+        if (range == null || !range.matches()) {
+            respond(exchange, 400, "Missing or invalid Content-Range");
+            return;
+        }
+        long start = Long.parseLong(range.group(1));
+        long end = Long.parseLong(range.group(2)) + 1;
+        long total = Long.parseLong(range.group(3));
+        if (start >= end || end > total) {
+            respond(exchange, 400, "Content-Range outside the file");
+            return;
+        }
+        if (!takeChunkAllowance()) {
+            chunksRejected.incrementAndGet();
+            respond(exchange, 503, "Chunk rejected by the stand-in");
+            return;
+        }
+        Upload upload = uploads.computeIfAbsent(uploadId,
+                id -> new Upload(total, directory.resolve(id + ".part")));
+        if (upload.total != total) {
+            respond(exchange, 400, "Total size changed from " + upload.total + " to " + total);
+            return;
+        }
+
+        long received = 0;
+        try (InputStream in = exchange.getRequestBody();
+             FileChannel channel = FileChannel.open(upload.part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (start + received + n > end) {
+                    respond(exchange, 400, "Body longer than its Content-Range");
+                    return;
+                }
+                ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+                while (src.hasRemaining()) {
+                    channel.write(src, start + received + src.position());
+                }
+                received += n;
+            }
+        }
+        if (start + received != end) {
+            respond(exchange, 400, "Body shorter than its Content-Range");
+            return;
+        }
+        upload.add(start, end);
+        chunksAccepted.incrementAndGet();
+        respond(exchange, 200, "ok");
+    }
+
+    private void complete(HttpExchange exchange, String uploadId) throws IOException {
+        String fileName = exchange.getRequestHeaders().getFirst("Upload-File-Name");
+        Path name = fileName != null ? Paths.get(fileName).getFileName() : null;
+        if (name == null || !name.toString().equals(fileName)) {
+            respond(exchange, 400, "Missing or invalid Upload-File-Name");
+            return;
+        }
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) {
+            respond(exchange, 404, "Unknown upload " + uploadId);
+            return;
+        }
+        String missing = upload.missing();
+        if (!missing.isEmpty()) {
+            respond(exchange, 409, "Missing bytes " + missing);
+            return;
+        }
+        Path target = directory.resolve(name);
+        Files.move(upload.part, target, StandardCopyOption.REPLACE_EXISTING);
+        uploads.remove(uploadId);
+        uploadsCompleted.incrementAndGet();
+        logger.info("Upload {} assembled into [{}] ({} bytes)", uploadId, target, upload.total);
+        respond(exchange, 200, "{\"uploadId\":\"" + uploadId + "\",\"file\":\"" + name + "\",\"size\":" + upload.total + "}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public long getChunksAccepted() {
+        return chunksAccepted.get();
+    }
+
+    public long getChunksRejected() {
+        return chunksRejected.get();
+    }
+
+    public long getUploadsCompleted() {
+        return uploadsCompleted.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+        logger.info("Stand-in upload endpoint stopped: {}", this);
+    }
+
+    @Override
+    public String toString() {
+        return "StandInUploadServer{" +
+                "port=" + getPort() +
+                ", chunksAccepted=" + chunksAccepted.get() +
+                ", chunksRejected=" + chunksRejected.get() +
+                ", uploadsCompleted=" + uploadsCompleted.get() +
+                ", inProgress=" + uploads.size() +
+                '}';
+    }
+
+    // Byte ranges received so far for one upload, merged as they arrive
+    private static final class Upload {
+        private final long total;
+        private final Path part;
+        // start -> end (exclusive) of disjoint received ranges
+        private final TreeMap<Long, Long> received = new TreeMap<>();
+
+        private Upload(long total, Path part) {
+            this.total = total;
+            this.part = part;
+        }
+
+        synchronized void add(long start, long end) {
+            Map.Entry<Long, Long> before = received.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> after = received.ceilingEntry(start);
+            while (after != null && after.getKey() <= end) {
+                end = Math.max(end, after.getValue());
+                received.remove(after.getKey());
+                after = received.ceilingEntry(start);
+            }
+            received.put(start, end);
+        }
+
+        // Gaps as "start-end" (inclusive) ranges, empty when the whole file is there
+        synchronized String missing() {
+            StringBuilder gaps = new StringBuilder();
+            long next = 0;
+            for (Map.Entry<Long, Long> range : received.entrySet()) {
+                if (range.getKey() > next) {
+                    appendGap(gaps, next, range.getKey());
+                }
+                next = range.getValue();
+            }
+            if (next < total) {
+                appendGap(gaps, next, total);
+            }
+            return gaps.toString();
+        }
+
+        private static void appendGap(StringBuilder gaps, long from, long to) {
+            if (gaps.length() > 0) {
+                gaps.append(',');
+            }
+            gaps.append(from).append('-').append(to - 1);
+        }
+    }
+
+    /**
+     * Runs the stand-in upload endpoint until the process is stopped.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 8090;
+        Path dir = Paths.get("standin-uploads");
+        int rejectAfter = -1;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                continue;
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "dir":
+                    dir = Paths.get(value);
+                    break;
+                case "reject-after":
+                    rejectAfter = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    break;
+            }
+        }
+        StandInUploadServer server = new StandInUploadServer(port, dir);
+        server.rejectChunksAfter(rejectAfter);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+}
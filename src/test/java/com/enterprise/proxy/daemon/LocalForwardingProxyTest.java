@@ -0,0 +1,197 @@
+package com.enterprise.proxy.daemon;
+
+import com.enterprise.proxy.config.DaemonConfig;
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.service.CachingDnsResolver;
+import com.enterprise.proxy.service.ProxyAuthSchemeResolver;
+import com.enterprise.proxy.service.ProxyEndpointPool;
+import com.enterprise.proxy.service.ProxyService;
+import com.enterprise.proxy.standin.StandInProxy;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LocalForwardingProxyTest {
+
+    private EchoServer origin;
+    private StandInProxy upstream;
+    private CachingDnsResolver dnsResolver;
+    private LocalForwardingProxy daemon;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        origin = new EchoServer();
+        upstream = new StandInProxy(0, Collections.singletonList(StandInProxy.Scheme.BASIC), 16);
+        upstream.setCredentials("alice", "secret");
+
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setHost("127.0.0.1");
+        proxyConfig.setPort(upstream.getPort());
+        proxyConfig.setUsername("alice");
+        proxyConfig.setPassword("secret");
+        HttpClientConfig httpClientConfig = new HttpClientConfig();
+        dnsResolver = new CachingDnsResolver(httpClientConfig);
+        UpstreamTunnelConnector connector = new UpstreamTunnelConnector(proxyConfig, httpClientConfig,
+                new ProxyAuthSchemeResolver(proxyConfig), new ProxyEndpointPool(proxyConfig, dnsResolver), dnsResolver);
+
+        // Plain requests go out through ProxyService, which answers from here
+        ProxyService proxyService = mock(ProxyService.class);
+        when(proxyService.forward(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+            when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+            when(response.getAllHeaders()).thenReturn(new Header[0]);
+            when(response.getEntity()).thenReturn(new StringEntity("forwarded", StandardCharsets.US_ASCII));
+            return response;
+        });
+
+        DaemonConfig config = new DaemonConfig();
+        config.setPort(0);
+        config.setDrainTimeout(1000);
+        daemon = new LocalForwardingProxy(config, proxyService, connector);
+        daemon.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        daemon.close();
+        upstream.close();
+        dnsResolver.close();
+        origin.close();
+    }
+
+    private Socket client() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getLocalPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString("ISO-8859-1");
+    }
+
+    private String forwardOnce() throws IOException, InterruptedException {
+        return forwardOnce(1);
+    }
+
+    // Sends the request head in a few pieces, so it arrives over several selects
+    private String forwardOnce(int pieces) throws IOException, InterruptedException {
+        byte[] head = ("GET http://backend.invalid/resource HTTP/1.1\r\n"
+                + "Host: backend.invalid\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        try (Socket socket = client()) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            int step = (head.length + pieces - 1) / pieces;
+            for (int offset = 0; offset < head.length; offset += step) {
+                if (offset > 0) {
+                    Thread.sleep(1);
+                }
+                out.write(head, offset, Math.min(step, head.length - offset));
+                out.flush();
+            }
+            return readAll(socket.getInputStream());
+        }
+    }
+
+    private void assertTunnelRelays() throws IOException {
+        try (Socket socket = client()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("CONNECT " + origin.authority() + " HTTP/1.1\r\nHost: " + origin.authority() + "\r\n\r\nping")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            String expected = "HTTP/1.1 200 Connection established\r\n\r\nping";
+            byte[] received = new byte[expected.length()];
+            InputStream in = socket.getInputStream();
+            for (int read = 0; read < received.length; ) {
+                int n = in.read(received, read, received.length - read);
+                assertTrue(n > 0, "tunnel closed early");
+                read += n;
+            }
+            assertEquals(expected, new String(received, StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    void connectOpensAnAuthenticatedTunnel() throws IOException {
+        assertTunnelRelays();
+        assertEquals(1, upstream.getTunnels());
+    }
+
+    @Test
+    void absoluteUriRequestIsForwarded() throws Exception {
+        String response = forwardOnce();
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+        assertTrue(response.contains("Connection: close\r\n"), response);
+        assertTrue(response.endsWith("\r\n\r\nforwarded"), response);
+    }
+
+    @Test
+    void malformedRequestIsRejected() throws IOException {
+        try (Socket socket = client()) {
+            socket.getOutputStream().write("NONSENSE\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertTrue(readAll(socket.getInputStream()).startsWith("HTTP/1.1 400 "));
+        }
+    }
+
+    @Test
+    void concurrentForwardedRequestsLeaveTheSelectorRunning() throws Exception {
+        // Heads keep arriving while earlier ones are handed to workers; that must not break the key iteration
+        int clients = 64;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            for (int round = 0; round < 5; round++) {
+                CountDownLatch go = new CountDownLatch(1);
+                List<Future<String>> responses = new ArrayList<>();
+                for (int i = 0; i < clients; i++) {
+                    responses.add(pool.submit(() -> {
+                        go.await();
+                        return forwardOnce(4);
+                    }));
+                }
+                go.countDown();
+                for (Future<String> response : responses) {
+                    String text = response.get(20, TimeUnit.SECONDS);
+                    assertTrue(text.startsWith("HTTP/1.1 200 ") || text.startsWith("HTTP/1.1 503 "), text);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTunnelRelays();
+        assertTrue(forwardOnce().startsWith("HTTP/1.1 200 OK"));
+    }
+}
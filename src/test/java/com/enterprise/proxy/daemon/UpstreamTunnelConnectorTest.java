@@ -0,0 +1,143 @@
+package com.enterprise.proxy.daemon;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.service.CachingDnsResolver;
+import com.enterprise.proxy.service.ProxyAuthMode;
+import com.enterprise.proxy.service.ProxyAuthSchemeResolver;
+import com.enterprise.proxy.service.ProxyEndpointPool;
+import com.enterprise.proxy.standin.StandInProxy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamTunnelConnectorTest {
+
+    private EchoServer origin;
+    private StandInProxy proxy;
+    private ProxyConfig proxyConfig;
+    private ProxyAuthSchemeResolver resolver;
+    private CachingDnsResolver dnsResolver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        origin = new EchoServer();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (proxy != null) {
+            proxy.close();
+        }
+        if (dnsResolver != null) {
+            dnsResolver.close();
+        }
+        origin.close();
+    }
+
+    private UpstreamTunnelConnector connector(List<StandInProxy.Scheme> schemes) throws IOException {
+        proxy = new StandInProxy(0, schemes, 16);
+        proxy.setCredentials("alice", "secret");
+        proxyConfig = new ProxyConfig();
+        proxyConfig.setHost("127.0.0.1");
+        proxyConfig.setPort(proxy.getPort());
+        proxyConfig.setUsername("alice");
+        proxyConfig.setPassword("secret");
+        proxyConfig.setDomain("CORP");
+        HttpClientConfig httpClientConfig = new HttpClientConfig();
+        resolver = new ProxyAuthSchemeResolver(proxyConfig);
+        dnsResolver = new CachingDnsResolver(httpClientConfig);
+        return new UpstreamTunnelConnector(proxyConfig, httpClientConfig, resolver,
+                new ProxyEndpointPool(proxyConfig, dnsResolver), dnsResolver);
+    }
+
+    private String proxyKey() {
+        return "127.0.0.1:" + proxy.getPort();
+    }
+
+    // Sends a few bytes through the tunnel and checks the echo comes back
+    private static void assertRelays(UpstreamTunnelConnector.Tunnel tunnel) throws IOException {
+        assertTrue(tunnel.isOpen(), tunnel.status + " " + tunnel.reason);
+        assertFalse(tunnel.leftover.hasRemaining());
+        try (Socket socket = tunnel.channel.socket()) {
+            byte[] ping = "ping".getBytes(StandardCharsets.US_ASCII);
+            socket.getOutputStream().write(ping);
+            byte[] echoed = new byte[ping.length];
+            InputStream in = socket.getInputStream();
+            for (int read = 0; read < echoed.length; ) {
+                int n = in.read(echoed, read, echoed.length - read);
+                assertTrue(n > 0, "tunnel closed early");
+                read += n;
+            }
+            assertArrayEquals(ping, echoed);
+        }
+    }
+
+    @Test
+    void basicHandshakeOpensTunnelAndRemembersTheScheme() throws IOException {
+        UpstreamTunnelConnector connector = connector(Arrays.asList(StandInProxy.Scheme.NEGOTIATE, StandInProxy.Scheme.BASIC));
+
+        assertRelays(connector.connect(origin.authority(), "test"));
+
+        assertTrue(resolver.isResolved(proxyKey()));
+        assertEquals(ProxyAuthMode.BASIC, resolver.candidates(proxyKey()).get(0));
+        assertEquals(1, proxy.getChallenges());
+    }
+
+    @Test
+    void rememberedSchemeAnswersTheFirstConnect() throws IOException {
+        UpstreamTunnelConnector connector = connector(Arrays.asList(StandInProxy.Scheme.BASIC));
+        assertRelays(connector.connect(origin.authority(), "test"));
+        long challenges = proxy.getChallenges();
+
+        assertRelays(connector.connect(origin.authority(), "test"));
+
+        assertEquals(challenges, proxy.getChallenges());
+    }
+
+    @Test
+    void ntlmHandshakeCompletesOnOneConnection() throws IOException {
+        UpstreamTunnelConnector connector = connector(Arrays.asList(StandInProxy.Scheme.NTLM));
+
+        assertRelays(connector.connect(origin.authority(), "test"));
+
+        assertEquals(ProxyAuthMode.NTLM, resolver.candidates(proxyKey()).get(0));
+        assertEquals(1, proxy.getConnections());
+    }
+
+    @Test
+    void wrongPasswordReportsProxyAuthFailure() throws IOException {
+        UpstreamTunnelConnector connector = connector(Arrays.asList(StandInProxy.Scheme.BASIC));
+        proxyConfig.setPassword("wrong");
+
+        UpstreamTunnelConnector.Tunnel tunnel = connector.connect(origin.authority(), "test");
+
+        assertFalse(tunnel.isOpen());
+        assertEquals(407, tunnel.status);
+        assertFalse(resolver.isResolved(proxyKey()));
+    }
+
+    @Test
+    void unreachableTargetPassesTheProxyStatusOn() throws IOException {
+        UpstreamTunnelConnector connector = connector(Arrays.asList(StandInProxy.Scheme.BASIC));
+        String closedPort = origin.authority();
+        origin.close();
+
+        UpstreamTunnelConnector.Tunnel tunnel = connector.connect(closedPort, "test");
+
+        assertFalse(tunnel.isOpen());
+        assertEquals(502, tunnel.status);
+    }
+}
@@ -0,0 +1,90 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import com.enterprise.proxy.config.TargetConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AsyncProxyServiceTest {
+
+    private HttpServer node;
+    private final AtomicInteger forwarded = new AtomicInteger();
+    private ProxyEndpointPool endpointPool;
+    private CachingDnsResolver dnsResolver;
+    private AsyncProxyService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        node = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 10);
+        node.createContext("/", this::forward);
+        node.start();
+
+        ProxyConfig proxyConfig = new ProxyConfig();
+        // proxy.host/proxy.port lead nowhere: only the endpoint pool knows the live node
+        proxyConfig.setHost("127.0.0.1");
+        proxyConfig.setPort(closedPort());
+        proxyConfig.setUsername("user");
+        proxyConfig.setPassword("secret");
+        proxyConfig.setEndpoints(Arrays.asList("localhost:" + node.getAddress().getPort(), "127.0.0.1:" + closedPort()));
+        HttpClientConfig httpClientConfig = new HttpClientConfig();
+        dnsResolver = new CachingDnsResolver(httpClientConfig);
+        endpointPool = new ProxyEndpointPool(proxyConfig, dnsResolver);
+
+        ProxyMetrics metrics = mock(ProxyMetrics.class);
+        when(metrics.countReceived(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        service = new AsyncProxyService(proxyConfig, httpClientConfig, new TargetConfig(),
+                new ProxyAuthSchemeResolver(proxyConfig), new ProxyAuthSessionCache(proxyConfig),
+                new ProxyTlsContext(httpClientConfig), metrics, endpointPool, dnsResolver);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.closeClients();
+        dnsResolver.close();
+        node.stop(0);
+    }
+
+    private void forward(HttpExchange exchange) throws IOException {
+        forwarded.incrementAndGet();
+        byte[] body = ("forwarded " + exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    void asyncRequestsGoThroughTheEndpointPoolAndDnsCache() throws Exception {
+        String result = service.executeRequestAsync("http://target.invalid/resource").get(10, TimeUnit.SECONDS);
+
+        assertEquals("forwarded http://target.invalid/resource", result);
+        assertEquals(1, forwarded.get());
+        assertTrue(dnsResolver.getLookups() > 0, "node name resolved through the cache");
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.enterprise.proxy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+
+    // One stripe, so every acquire and release on the test thread sees the same free lists
+    private final BufferPool pool = new BufferPool(1);
+
+    @Test
+    void roundsUpToTheSizeClassAndLimitsToTheRequestedSize() {
+        ByteBuffer tiny = pool.acquire(1);
+        assertEquals(4096, tiny.capacity());
+        assertEquals(1, tiny.limit());
+
+        ByteBuffer buffer = pool.acquire(5000);
+        assertEquals(8192, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(5000, buffer.limit());
+        assertTrue(buffer.hasArray());
+        assertFalse(buffer.isDirect());
+        assertEquals(2, pool.getOutstanding());
+    }
+
+    @Test
+    void releasedBufferIsReusedCleared() {
+        ByteBuffer buffer = pool.acquire(5000);
+        buffer.putLong(42L);
+        pool.release(buffer);
+
+        ByteBuffer again = pool.acquire(6000);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(6000, again.limit());
+
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getOutstanding());
+        assertEquals(0, pool.getDropped());
+    }
+
+    @Test
+    void heapAndDirectBuffersArePooledApart() {
+        ByteBuffer direct = pool.acquireDirect(16 * 1024);
+        assertTrue(direct.isDirect());
+        pool.release(direct);
+
+        ByteBuffer heap = pool.acquire(16 * 1024);
+        assertNotSame(direct, heap);
+        assertFalse(heap.isDirect());
+        assertSame(direct, pool.acquireDirect(16 * 1024));
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    void fullStripeDropsReleasedBuffers() {
+        // 256 KB per stripe and class: four 64 KB buffers, but always at least one 1 MB buffer
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            buffers.add(pool.acquire(64 * 1024));
+        }
+        buffers.add(pool.acquire(1024 * 1024));
+        buffers.add(pool.acquire(1024 * 1024));
+        buffers.forEach(pool::release);
+
+        assertEquals(2, pool.getDropped());
+        assertEquals(0, pool.getOutstanding());
+        for (int i = 0; i < 4; i++) {
+            pool.acquire(64 * 1024);
+        }
+        pool.acquire(1024 * 1024);
+        assertEquals(5, pool.getHits());
+    }
+
+    @Test
+    void oversizedBuffersAreNotPooled() {
+        ByteBuffer large = pool.acquire(2 * 1024 * 1024 + 1);
+        assertEquals(2 * 1024 * 1024 + 1, large.capacity());
+        pool.release(large);
+
+        assertNotSame(large, pool.acquire(2 * 1024 * 1024 + 1));
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(1, pool.getOutstanding());
+    }
+
+    @Test
+    void releaseIgnoresNull() {
+        pool.release(null);
+        assertEquals(0, pool.getOutstanding());
+    }
+}
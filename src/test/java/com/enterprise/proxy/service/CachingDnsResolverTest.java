@@ -0,0 +1,146 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import org.apache.http.conn.DnsResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingDnsResolverTest {
+
+    private static final InetAddress[] ADDRESSES = {address(10, 0, 0, 1), address(10, 0, 0, 2), address(10, 0, 0, 3)};
+
+    private final FakeDns dns = new FakeDns();
+    private HttpClientConfig config;
+    private CachingDnsResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        config = new HttpClientConfig();
+        config.getDns().setTtl(60_000);
+        config.getDns().setRefreshAhead(10_000);
+        config.getDns().setNegativeTtl(60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (resolver != null) {
+            resolver.close();
+        }
+    }
+
+    private CachingDnsResolver resolver() {
+        resolver = new CachingDnsResolver(config, dns);
+        return resolver;
+    }
+
+    @Test
+    void cachesLookupsCaseInsensitively() throws UnknownHostException {
+        CachingDnsResolver resolver = resolver();
+
+        resolver.resolve("Proxy.Example.com");
+        resolver.resolve("proxy.example.com");
+        resolver.resolve("PROXY.EXAMPLE.COM");
+
+        assertEquals(1, dns.lookups.get());
+        assertEquals(1, resolver.getLookups());
+        assertEquals(2, resolver.getHits());
+    }
+
+    @Test
+    void rotatesThroughAllAddresses() throws UnknownHostException {
+        CachingDnsResolver resolver = resolver();
+
+        InetAddress[] first = resolver.resolve("proxy.example.com");
+        InetAddress[] second = resolver.resolve("proxy.example.com");
+        InetAddress[] third = resolver.resolve("proxy.example.com");
+
+        assertArrayEquals(ADDRESSES, first);
+        assertArrayEquals(new InetAddress[]{ADDRESSES[1], ADDRESSES[2], ADDRESSES[0]}, second);
+        assertArrayEquals(new InetAddress[]{ADDRESSES[2], ADDRESSES[0], ADDRESSES[1]}, third);
+    }
+
+    @Test
+    void keepsTheLastAddressesWhenALookupFails() throws Exception {
+        config.getDns().setTtl(50);
+        config.getDns().setRefreshAhead(0);
+        CachingDnsResolver resolver = resolver();
+        resolver.resolve("proxy.example.com");
+
+        dns.failing = true;
+        Thread.sleep(100);
+
+        assertEquals(new HashSet<>(Arrays.asList(ADDRESSES)),
+                new HashSet<>(Arrays.asList(resolver.resolve("proxy.example.com"))));
+        // The stale answer is kept for the negative TTL rather than looked up on every call
+        resolver.resolve("proxy.example.com");
+        assertEquals(2, dns.lookups.get());
+    }
+
+    @Test
+    void negativelyCachesHostsThatNeverResolved() {
+        dns.failing = true;
+        CachingDnsResolver resolver = resolver();
+
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("missing.example.com"));
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("missing.example.com"));
+
+        assertEquals(1, dns.lookups.get());
+    }
+
+    @Test
+    void refreshesHostsInUseBeforeTheyExpire() throws Exception {
+        config.getDns().setTtl(300);
+        config.getDns().setRefreshAhead(250);
+        CachingDnsResolver resolver = resolver();
+        resolver.resolve("proxy.example.com");
+
+        // Refreshed once at ~50 ms; the refreshed entry is not used, so it is left to expire
+        Thread.sleep(500);
+        assertEquals(2, dns.lookups.get());
+    }
+
+    @Test
+    void disabledResolverPassesEveryLookupThrough() throws UnknownHostException {
+        config.getDns().setEnabled(false);
+        CachingDnsResolver resolver = resolver();
+
+        resolver.resolve("proxy.example.com");
+        resolver.resolve("proxy.example.com");
+
+        assertEquals(2, dns.lookups.get());
+        assertEquals(0, resolver.getHits());
+    }
+
+    private static InetAddress address(int a, int b, int c, int d) {
+        try {
+            return InetAddress.getByAddress(new byte[]{(byte) a, (byte) b, (byte) c, (byte) d});
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class FakeDns implements DnsResolver {
+        final AtomicInteger lookups = new AtomicInteger();
+        volatile boolean failing;
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+            if (failing) {
+                throw new UnknownHostException(host);
+            }
+            return ADDRESSES.clone();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.standin.StandInUploadServer;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedUploaderTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CHUNKS = 11;
+
+    @TempDir
+    Path tempDir;
+
+    private StandInUploadServer server;
+    private CloseableHttpClient httpClient;
+    private Path source;
+    private Path checkpoint;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StandInUploadServer(0, tempDir.resolve("received"));
+        httpClient = HttpClients.createDefault();
+        byte[] content = new byte[CHUNK_SIZE * (CHUNKS - 1) + 5000];
+        new Random(42).nextBytes(content);
+        source = Files.write(tempDir.resolve("payload.bin"), content);
+        checkpoint = tempDir.resolve("payload.bin.upload-checkpoint");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        httpClient.close();
+        server.close();
+    }
+
+    @Test
+    void uploadsChunksInParallelAndAssemblesTheFile() throws Exception {
+        ChunkedUploader uploader = new ChunkedUploader(httpClient, server.getEndpoint(), null, CHUNK_SIZE, 4);
+
+        String result = uploader.upload(source, ContentType.APPLICATION_OCTET_STREAM);
+
+        assertTrue(result.contains("\"size\":" + Files.size(source)), result);
+        assertEquals(CHUNKS, server.getChunksAccepted());
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(tempDir.resolve("received/payload.bin")));
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void interruptedUploadResumesFromItsCheckpoint() throws Exception {
+        ChunkedUploader uploader = new ChunkedUploader(httpClient, server.getEndpoint(), null, CHUNK_SIZE, 2);
+        server.rejectChunksAfter(4);
+
+        assertThrows(IOException.class, () -> uploader.upload(source, ContentType.APPLICATION_OCTET_STREAM));
+        assertTrue(server.getChunksRejected() > 0);
+        assertEquals(4, server.getChunksAccepted());
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            saved.load(in);
+        }
+        assertEquals(4, saved.getProperty("completed").split(",").length);
+
+        server.rejectChunksAfter(-1);
+        String result = uploader.upload(source, ContentType.APPLICATION_OCTET_STREAM);
+
+        // Only the chunks missing from the checkpoint are sent again, under the same upload id
+        assertEquals(CHUNKS, server.getChunksAccepted());
+        assertTrue(result.contains(saved.getProperty("uploadId")), result);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(tempDir.resolve("received/payload.bin")));
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void completionWithMissingChunksIsRefused() throws Exception {
+        ChunkedUploader uploader = new ChunkedUploader(httpClient, server.getEndpoint(), null, CHUNK_SIZE, 1);
+        server.rejectChunksAfter(2);
+        assertThrows(IOException.class, () -> uploader.upload(source, ContentType.APPLICATION_OCTET_STREAM));
+
+        // Pretend every chunk is done: the stand-in still knows which bytes it has not seen
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            saved.load(in);
+        }
+        StringBuilder all = new StringBuilder("0");
+        for (int i = 1; i < CHUNKS; i++) {
+            all.append(',').append(i);
+        }
+        saved.setProperty("completed", all.toString());
+        try (OutputStream out = Files.newOutputStream(checkpoint)) {
+            saved.store(out, null);
+        }
+
+        IOException failure = assertThrows(IOException.class,
+                () -> uploader.upload(source, ContentType.APPLICATION_OCTET_STREAM));
+        assertTrue(failure.getMessage().contains("409"), failure.getMessage());
+        assertTrue(failure.getMessage().contains("Missing bytes " + 2 * CHUNK_SIZE + "-"), failure.getMessage());
+    }
+}
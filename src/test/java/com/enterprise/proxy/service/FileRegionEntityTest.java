@@ -0,0 +1,124 @@
+package com.enterprise.proxy.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileRegionEntityTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private volatile byte[] received;
+    private volatile String transferEncoding;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 10);
+        server.createContext("/", this::receive);
+        server.start();
+        // The zero-copy setup of the pooled clients: channel-backed plain sockets and the sending executor
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create().register("http", FileRegionEntity.socketFactory()).build());
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setRequestExecutor(FileRegionEntity.requestExecutor())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+            }
+        }
+        received = body.toByteArray();
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            // transferTo with a Content-Length, the buffer when chunked
+            "1000, 50000, false",
+            "1000, 50000, true",
+            // several buffers' worth
+            "4096, 1500000, false",
+            "4096, 1500000, true"
+    })
+    void sendsTheRegionWithContentLengthOrChunked(int position, int length, boolean chunked) throws IOException {
+        byte[] content = new byte[position + length + 777];
+        new Random(3).nextBytes(content);
+        Path file = Files.write(tempDir.resolve("upload.bin"), content);
+
+        FileRegionEntity entity = new FileRegionEntity(file, position, length, ContentType.APPLICATION_OCTET_STREAM);
+        entity.setChunked(chunked);
+        HttpPost post = new HttpPost("http://127.0.0.1:" + server.getAddress().getPort() + "/upload");
+        post.setEntity(entity);
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            assertEquals(204, response.getStatusLine().getStatusCode());
+            EntityUtils.consume(response.getEntity());
+        }
+
+        assertEquals(chunked ? "chunked" : null, transferEncoding);
+        assertArrayEquals(Arrays.copyOfRange(content, position, position + length), received);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 100", "10, 0"})
+    void readsTheRegionAsAStream(int position, int length) throws IOException {
+        byte[] content = new byte[200];
+        new Random(5).nextBytes(content);
+        Path file = Files.write(tempDir.resolve("region.bin"), content);
+
+        FileRegionEntity entity = new FileRegionEntity(file, position, length, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = entity.getContent(); OutputStream sink = out) {
+            byte[] buffer = new byte[64];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                sink.write(buffer, 0, n);
+            }
+        }
+        assertArrayEquals(Arrays.copyOfRange(content, position, position + length), out.toByteArray());
+    }
+}
@@ -0,0 +1,70 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.service.OAuthTokenProvider.AccessToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OAuthTokenProviderTest {
+
+    private static AccessToken parse(String expiresIn, long requestedAt) throws IOException {
+        String field = expiresIn != null ? ",\"expires_in\":" + expiresIn : "";
+        return OAuthTokenProvider.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\"" + field + "}", requestedAt);
+    }
+
+    @Test
+    void longLivedTokenRefreshesTenPercentBeforeExpiry() throws IOException {
+        long now = System.currentTimeMillis();
+        AccessToken token = parse("3600", now);
+
+        assertEquals("abc", token.getValue());
+        assertEquals("Bearer", token.getType());
+        assertEquals(now + 3_600_000, token.getExpiresAt());
+        assertEquals(now + 3_600_000 - 360_000, token.getRefreshAt());
+        assertTrue(token.isUsable());
+    }
+
+    @Test
+    void missingExpiresInDefaultsToAnHour() throws IOException {
+        long now = System.currentTimeMillis();
+        assertEquals(now + 3_600_000, parse(null, now).getExpiresAt());
+    }
+
+    @Test
+    void shortLifetimeRefreshesAtHalfLife() throws IOException {
+        long now = System.currentTimeMillis();
+        AccessToken token = parse("10", now);
+
+        // The 10 s minimum refresh margin would otherwise put the refresh at the request time
+        assertEquals(now + 5000, token.getRefreshAt());
+        assertTrue(token.isUsable());
+    }
+
+    @Test
+    void veryShortLifetimeIsStillUsable() throws IOException {
+        long now = System.currentTimeMillis();
+        AccessToken token = parse("4", now);
+
+        assertEquals(now + 2000, token.getRefreshAt());
+        assertTrue(token.isUsable());
+        // The expiry margin shrinks to a quarter of the lifetime (1 s)
+        assertTrue(parse("4", now - 2900).isUsable());
+        assertFalse(parse("4", now - 3100).isUsable());
+    }
+
+    @Test
+    void nonPositiveExpiresInIsRejected() {
+        assertThrows(IOException.class, () -> parse("0", System.currentTimeMillis()));
+        assertThrows(IOException.class, () -> parse("-30", System.currentTimeMillis()));
+    }
+
+    @Test
+    void responseWithoutAccessTokenIsRejected() {
+        assertThrows(IOException.class, () -> OAuthTokenProvider.parse("{\"expires_in\":3600}", 0));
+    }
+}
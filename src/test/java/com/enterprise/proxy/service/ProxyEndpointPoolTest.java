@@ -0,0 +1,274 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.enterprise.proxy.config.ProxyConfig;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyEndpointPoolTest {
+
+    private static final String PLAIN_TARGET = "http://target.invalid/resource";
+    private static final String TUNNELLED_TARGET = "https://target.invalid/resource";
+
+    private Node first;
+    private Node second;
+    private ProxyEndpointPool pool;
+    private CloseableHttpClient httpClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        first = new Node();
+        second = new Node();
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setHost("127.0.0.1");
+        proxyConfig.setEndpoints(Arrays.asList(first.endpoint(), second.endpoint()));
+        proxyConfig.getHealth().setReadTimeout(300);
+        // No background probes, so only real requests move nodes in and out
+        pool = new ProxyEndpointPool(proxyConfig, new CachingDnsResolver(new HttpClientConfig()));
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", pool.socketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+                        .register("https", pool.socketFactory(new PlainLayeredSocketFactory()))
+                        .build());
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setRoutePlanner(pool.routePlanner())
+                .addInterceptorLast(pool.responseInterceptor())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setProxy(new HttpHost("127.0.0.1", first.port()))
+                        .setSocketTimeout(30000)
+                        .build())
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        httpClient.close();
+        first.close();
+        second.close();
+    }
+
+    private int get(String url) throws IOException {
+        return get(new HttpGet(url));
+    }
+
+    // Stands in for ProxyService: every failed request is reported to the pool
+    private int get(HttpGet request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        } catch (IOException e) {
+            pool.requestFailed(e);
+            throw e;
+        }
+    }
+
+    @Test
+    void gatewayErrorTakesTheNodeOut() throws IOException {
+        first.status = 502;
+
+        assertEquals(502, get(PLAIN_TARGET));
+        assertEquals(200, get(PLAIN_TARGET));
+        assertEquals(200, get(PLAIN_TARGET));
+
+        assertEquals(1, first.requests.get());
+        assertEquals(2, second.requests.get());
+    }
+
+    @Test
+    void targetErrorsDoNotTakeTheNodeOut() throws IOException {
+        first.status = 500;
+
+        assertEquals(500, get(PLAIN_TARGET));
+        assertEquals(500, get(PLAIN_TARGET));
+
+        assertEquals(2, first.requests.get());
+        assertEquals(0, second.requests.get());
+    }
+
+    @Test
+    void stalledConnectTimesOutAtTheCapAndTakesTheNodeOut() throws IOException {
+        first.connectStallMillis = 5000;
+
+        long start = System.nanoTime();
+        assertThrows(SocketTimeoutException.class, () -> get(TUNNELLED_TARGET));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed < 3000, "CONNECT timed out after " + elapsed + " ms");
+
+        assertEquals(200, get(TUNNELLED_TARGET));
+        assertEquals(1, first.requests.get());
+        assertEquals(1, second.requests.get());
+    }
+
+    @Test
+    void refusedConnectTakesTheNodeOut() throws IOException {
+        first.connectStatus = 502;
+
+        assertEquals(502, get(TUNNELLED_TARGET));
+        assertEquals(200, get(TUNNELLED_TARGET));
+
+        assertEquals(1, first.requests.get());
+        assertEquals(1, second.requests.get());
+    }
+
+    @Test
+    void slowTargetInsideTheTunnelKeepsTheNode() throws IOException {
+        // Slower than the CONNECT cap, so the cap must not outlive the tunnel setup
+        first.targetStallMillis = 800;
+        assertEquals(200, get(TUNNELLED_TARGET));
+
+        // A target slower than the request's own timeout fails the request, not the node
+        HttpGet impatient = new HttpGet(TUNNELLED_TARGET);
+        impatient.setConfig(RequestConfig.custom()
+                .setProxy(new HttpHost("127.0.0.1", first.port()))
+                .setSocketTimeout(200)
+                .build());
+        assertThrows(SocketTimeoutException.class, () -> get(impatient));
+
+        first.targetStallMillis = 0;
+        assertEquals(200, get(TUNNELLED_TARGET));
+        assertEquals(3, first.requests.get());
+        assertEquals(0, second.requests.get());
+    }
+
+    // Hands the tunnel over as is: the stand-in target inside it speaks plain HTTP
+    private static final class PlainLayeredSocketFactory extends PlainConnectionSocketFactory
+            implements LayeredConnectionSocketFactory {
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) {
+            return socket;
+        }
+    }
+
+    /**
+     * Loopback proxy node: answers forwarded requests itself with a fixed status, and accepts CONNECT
+     * (optionally after a stall, or refusing it) with a stand-in target inside the tunnel. Every
+     * response closes the connection.
+     */
+    private static final class Node implements Closeable {
+        private final ServerSocket serverSocket;
+        private final ExecutorService workers = Executors.newCachedThreadPool();
+        volatile int status = 200;
+        volatile int connectStatus = 200;
+        volatile long connectStallMillis;
+        volatile long targetStallMillis;
+        final AtomicInteger requests = new AtomicInteger();
+
+        Node() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            workers.execute(this::acceptLoop);
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        String endpoint() {
+            return "127.0.0.1:" + port();
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    workers.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (Socket s = socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+                OutputStream out = s.getOutputStream();
+                String requestLine = readHead(in);
+                if (requestLine == null) {
+                    return;
+                }
+                requests.incrementAndGet();
+                if (!requestLine.startsWith("CONNECT ")) {
+                    respond(out, status);
+                    return;
+                }
+                sleep(connectStallMillis);
+                if (connectStatus != 200) {
+                    respond(out, connectStatus);
+                    return;
+                }
+                out.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                if (readHead(in) != null) {
+                    sleep(targetStallMillis);
+                    respond(out, 200);
+                }
+            } catch (IOException | InterruptedException e) {
+                // Client gave up or the node was closed
+            }
+        }
+
+        private static String readHead(BufferedReader in) throws IOException {
+            String requestLine = in.readLine();
+            String line = requestLine;
+            while (line != null && !line.isEmpty()) {
+                line = in.readLine();
+            }
+            return requestLine;
+        }
+
+        private static void respond(OutputStream out, int statusCode) throws IOException {
+            out.write(("HTTP/1.1 " + statusCode + " Status\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+
+        private static void sleep(long millis) throws InterruptedException {
+            if (millis > 0) {
+                Thread.sleep(millis);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.enterprise.proxy.service;
+
+import com.enterprise.proxy.config.HttpClientConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangedDownloaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RangeOrigin origin;
+    private CloseableHttpClient httpClient;
+    private HttpClientConfig.Download config;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        origin = new RangeOrigin();
+        httpClient = HttpClients.custom().setMaxConnPerRoute(8).setMaxConnTotal(8).build();
+        config = new HttpClientConfig.Download();
+        config.setParallelism(4);
+        config.setMinPartSize(10_000);
+        file = tempDir.resolve("download.bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        httpClient.close();
+        origin.close();
+    }
+
+    private RangedDownloader downloader() {
+        return new RangedDownloader(httpClient::execute, config);
+    }
+
+    @Test
+    void downloadsRangesInParallel() throws IOException {
+        origin.content = randomBytes(100_000);
+
+        assertEquals(100_000, downloader().download(origin.url(), file, false));
+
+        assertArrayEquals(origin.content, Files.readAllBytes(file));
+        assertEquals(4, origin.rangeRequests.get());
+    }
+
+    @Test
+    void targetWithoutRangesFallsBack() throws IOException {
+        origin.content = randomBytes(100_000);
+        origin.acceptRanges = false;
+
+        assertEquals(-1, downloader().download(origin.url(), file, true));
+        assertEquals(0, origin.rangeRequests.get());
+    }
+
+    @Test
+    void emptyTargetFallsBackEvenWhenResumable() throws IOException {
+        origin.content = new byte[0];
+
+        assertEquals(-1, downloader().download(origin.url(), file, true));
+        assertFalse(Files.exists(RangedDownloader.checkpointFile(file)));
+    }
+
+    @Test
+    void interruptedDownloadResumesFromTheCheckpoint() throws IOException {
+        origin.content = randomBytes(200_000);
+        config.setParallelism(1);
+        config.setRetries(0);
+        origin.truncateAfter = 50_000;
+
+        assertThrows(IOException.class, () -> downloader().download(origin.url(), file, true));
+
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(RangedDownloader.checkpointFile(file))) {
+            checkpoint.load(in);
+        }
+        long resumeAt = Long.parseLong(checkpoint.getProperty("ranges").split(":")[1]);
+        assertTrue(resumeAt > 0 && resumeAt <= 50_000, "resume at " + resumeAt);
+
+        origin.truncateAfter = -1;
+        origin.bytesServed.set(0);
+        assertEquals(200_000, downloader().download(origin.url(), file, true));
+
+        assertEquals(200_000 - resumeAt, origin.bytesServed.get());
+        assertArrayEquals(origin.content, Files.readAllBytes(file));
+        assertFalse(Files.exists(RangedDownloader.checkpointFile(file)));
+    }
+
+    @Test
+    void changedTargetIgnoresTheCheckpoint() throws IOException {
+        origin.content = randomBytes(200_000);
+        config.setParallelism(1);
+        config.setRetries(0);
+        origin.truncateAfter = 50_000;
+        assertThrows(IOException.class, () -> downloader().download(origin.url(), file, true));
+
+        origin.truncateAfter = -1;
+        origin.etag = "\"v2\"";
+        origin.bytesServed.set(0);
+        assertEquals(200_000, downloader().download(origin.url(), file, true));
+
+        assertEquals(200_000, origin.bytesServed.get());
+        assertArrayEquals(origin.content, Files.readAllBytes(file));
+    }
+
+    @Test
+    void failedDownloadReturnsOnlyAfterEveryRangeStopped() throws Exception {
+        origin.content = randomBytes(400_000);
+        config.setRetries(1);
+        // The first range trickles in while the others fail at once
+        origin.failRangesFrom = 1;
+        origin.trickleMillis = 20;
+
+        assertThrows(IOException.class, () -> downloader().download(origin.url(), file, true));
+        int requests = origin.rangeRequests.get();
+        Thread.sleep(300);
+
+        assertEquals(requests, origin.rangeRequests.get());
+        assertTrue(Files.exists(RangedDownloader.checkpointFile(file)));
+    }
+
+    @Test
+    void verifiesChecksum() throws Exception {
+        byte[] content = randomBytes(10_000);
+        Files.write(file, content);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+
+        RangedDownloader.verifyChecksum(file, "SHA-256:" + hex);
+        assertThrows(IOException.class, () -> RangedDownloader.verifyChecksum(file, "SHA-256:" + hex.reverse()));
+        assertThrows(IllegalArgumentException.class, () -> RangedDownloader.verifyChecksum(file, "no-algorithm"));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Loopback origin serving one resource with HEAD, byte ranges and If-Range; can cut a response short.
+     */
+    private static final class RangeOrigin {
+        private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+        private final HttpServer server;
+        private final ExecutorService workers = Executors.newCachedThreadPool();
+        volatile byte[] content = new byte[0];
+        volatile String etag = "\"v1\"";
+        volatile boolean acceptRanges = true;
+        // Close each range response after this many body bytes; negative = never
+        volatile long truncateAfter = -1;
+        // Ranges starting at or after this offset answer 500; negative = none
+        volatile long failRangesFrom = -1;
+        // Pause between 4 KB pieces of a range response
+        volatile long trickleMillis;
+        final AtomicInteger rangeRequests = new AtomicInteger();
+        final AtomicLong bytesServed = new AtomicLong();
+
+        RangeOrigin() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+            server.createContext("/", this::handle);
+            server.setExecutor(workers);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin";
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            try {
+                byte[] body = content;
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (acceptRanges) {
+                    exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                }
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                Matcher matcher = range != null ? RANGE.matcher(range) : null;
+                if (!acceptRanges || matcher == null || !matcher.matches() || (ifRange != null && !ifRange.equals(etag))) {
+                    exchange.sendResponseHeaders(200, body.length);
+                    write(exchange, body, 0, body.length);
+                    return;
+                }
+                rangeRequests.incrementAndGet();
+                int from = Integer.parseInt(matcher.group(1));
+                int to = Integer.parseInt(matcher.group(2));
+                if (failRangesFrom >= 0 && from >= failRangesFrom) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + body.length);
+                exchange.sendResponseHeaders(206, to - from + 1);
+                long limit = truncateAfter;
+                write(exchange, body, from, limit >= 0 ? (int) Math.min(limit, to - from + 1) : to - from + 1);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void write(HttpExchange exchange, byte[] body, int offset, int length) throws IOException {
+            OutputStream out = exchange.getResponseBody();
+            int piece = trickleMillis > 0 ? 4096 : Math.max(1, length);
+            for (int written = 0; written < length; written += piece) {
+                int n = Math.min(piece, length - written);
+                out.write(body, offset + written, n);
+                out.flush();
+                bytesServed.addAndGet(n);
+                if (trickleMillis > 0) {
+                    try {
+                        Thread.sleep(trickleMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted", e);
+                    }
+                }
+            }
+        }
+
+        void close() {
+            server.stop(0);
+            workers.shutdownNow();
+        }
+    }
+}